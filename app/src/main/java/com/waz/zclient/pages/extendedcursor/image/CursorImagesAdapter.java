@@ -20,8 +20,6 @@ package com.waz.zclient.pages.extendedcursor.image;
 import android.content.ContentResolver;
 import android.content.Context;
 import android.database.ContentObserver;
-import android.database.Cursor;
-import android.os.AsyncTask;
 import android.os.Handler;
 import android.provider.MediaStore;
 import android.support.v7.widget.RecyclerView;
@@ -37,7 +35,8 @@ class CursorImagesAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder>
     static final int VIEW_TYPE_CAMERA = 0;
     private static final int VIEW_TYPE_GALLERY = 1;
 
-    private Cursor cursor;
+    private final GalleryLoader loader;
+    private int cellSize = 0;
     private CursorImagesLayout.Callback callback;
     private AdapterCallback adapterCallback;
     private CameraViewHolder cameraViewHolder;
@@ -88,33 +87,24 @@ class CursorImagesAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder>
     CursorImagesAdapter(Context context, AdapterCallback adapterCallback) {
         this.resolver = context.getContentResolver();
         this.adapterCallback = adapterCallback;
+        this.loader = new GalleryLoader(resolver, new GalleryLoader.Listener() {
+            @Override
+            public void onReset() {
+                notifyDataSetChanged();
+            }
+
+            @Override
+            public void onPageLoaded(int from, int count) {
+                notifyItemRangeInserted(from + 1, count); // first item is camera
+            }
+        });
 
         load();
         resolver.registerContentObserver(MediaStore.Images.Media.EXTERNAL_CONTENT_URI, false, observer);
     }
 
     private void load() {
-        new AsyncTask<Void, Void, Cursor>() {
-            @Override
-            protected Cursor doInBackground(Void... params) {
-                Cursor c = resolver.query(MediaStore.Images.Media.EXTERNAL_CONTENT_URI, null, null, null, null);
-                c.moveToLast(); // force cursor loading and move to last, as we are displaying images in reverse order
-                return c;
-            }
-
-            @Override
-            protected void onPostExecute(Cursor c) {
-                if (closed) {
-                    c.close();
-                } else {
-                    if (cursor != null) {
-                        cursor.close();
-                    }
-                    cursor = c;
-                    notifyDataSetChanged();
-                }
-            }
-        } .execute();
+        loader.reload();
     }
 
     @Override
@@ -126,22 +116,35 @@ class CursorImagesAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder>
             cameraViewHolder.getLayout().setCallback(cameraCallback);
             return cameraViewHolder;
         } else {
-            return new GalleryItemViewHolder((ImageAssetView) inflater.inflate(R.layout.item_cursor_gallery, parent, false));
+            if (cellSize == 0) {
+                cellSize = parent.getHeight() / CursorImagesLayout.IMAGE_ROWS;
+            }
+            return new GalleryItemViewHolder((ImageAssetView) inflater.inflate(R.layout.item_cursor_gallery, parent, false), loader);
         }
     }
 
     @Override
     public void onBindViewHolder(RecyclerView.ViewHolder holder, int position) {
         if (getItemViewType(position) == VIEW_TYPE_GALLERY) {
-            cursor.moveToPosition(cursor.getCount() - position);
-            ((GalleryItemViewHolder) holder).setPath(cursor.getString(cursor.getColumnIndex(MediaStore.Images.Media.DATA)));
+            int index = position - 1;
+            ((GalleryItemViewHolder) holder).setImage(loader.getImage(index), cellSize);
             ((GalleryItemViewHolder) holder).setCallback(callback);
+            if (index >= loader.getCount() - GalleryLoader.PAGE_SIZE / 2) {
+                loader.loadMore();
+            }
+        }
+    }
+
+    @Override
+    public void onViewRecycled(RecyclerView.ViewHolder holder) {
+        if (holder instanceof GalleryItemViewHolder) {
+            ((GalleryItemViewHolder) holder).clear();
         }
     }
 
     @Override
     public int getItemCount() {
-        return cursor == null ? 1 : cursor.getCount() + 1;
+        return loader.getCount() + 1;
     }
 
     @Override
@@ -155,11 +158,8 @@ class CursorImagesAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder>
             cameraViewHolder.getLayout().onClose();
         }
 
-        if (cursor != null) {
-            cursor.close();
-            cursor = null;
-            notifyDataSetChanged();
-        }
+        loader.close();
+        notifyDataSetChanged();
 
         resolver.unregisterContentObserver(observer);
     }
@@ -30,7 +30,7 @@ import com.waz.zclient.utils.ViewUtils;
 
 public class CursorImagesLayout extends FrameLayout implements View.OnClickListener, CursorImagesAdapter.AdapterCallback {
 
-    private static final int IMAGE_ROWS = 3;
+    static final int IMAGE_ROWS = 3;
 
     private RecyclerView recyclerView;
     private CursorImagesAdapter cursorImagesAdapter;
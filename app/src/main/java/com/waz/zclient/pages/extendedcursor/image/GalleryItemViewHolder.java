@@ -17,30 +17,34 @@
  */
 package com.waz.zclient.pages.extendedcursor.image;
 
+import android.content.ContentUris;
+import android.graphics.Bitmap;
+import android.provider.MediaStore;
 import android.support.v7.widget.RecyclerView;
 import android.view.View;
-import com.waz.api.ImageAsset;
 import com.waz.api.ImageAssetFactory;
 import com.waz.utils.wrappers.AndroidURIUtil;
 import com.waz.zclient.views.images.ImageAssetView;
 
-import java.io.File;
-
-public class GalleryItemViewHolder extends RecyclerView.ViewHolder {
+public class GalleryItemViewHolder extends RecyclerView.ViewHolder implements GalleryLoader.ThumbnailCallback {
 
     private final ImageAssetView imageView;
-    private ImageAsset asset;
+    private final GalleryLoader loader;
+    private long imageId = -1;
+    private GalleryLoader.ThumbnailRequest request;
     private CursorImagesLayout.Callback callback;
 
-    public GalleryItemViewHolder(ImageAssetView itemView) {
+    public GalleryItemViewHolder(ImageAssetView itemView, GalleryLoader loader) {
         super(itemView);
 
         this.imageView = itemView;
+        this.loader = loader;
         imageView.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
-                if (asset != null && callback != null) {
-                    callback.onGalleryPictureSelected(asset);
+                if (imageId != -1 && callback != null) {
+                    String uri = ContentUris.withAppendedId(MediaStore.Images.Media.EXTERNAL_CONTENT_URI, imageId).toString();
+                    callback.onGalleryPictureSelected(ImageAssetFactory.getImageAsset(AndroidURIUtil.parse(uri)));
                 }
             }
         });
@@ -50,8 +54,37 @@ public class GalleryItemViewHolder extends RecyclerView.ViewHolder {
         this.callback = callback;
     }
 
-    public void setPath(String path) {
-        asset = ImageAssetFactory.getImageAsset(AndroidURIUtil.fromFile(new File(path)));
-        imageView.setImageAsset(asset);
+    public void setImage(GalleryLoader.Image image, int size) {
+        if (image.id == imageId && request != null) {
+            return;
+        }
+        clear();
+        imageId = image.id;
+        Bitmap cached = loader.getCachedThumbnail(image.id);
+        if (cached != null) {
+            imageView.setImageBitmap(cached);
+        } else {
+            request = loader.loadThumbnail(image, size, this);
+        }
+    }
+
+    /**
+     * Cancels pending thumbnail decoding, called when the cell is recycled.
+     */
+    public void clear() {
+        if (request != null) {
+            request.cancel();
+            request = null;
+        }
+        imageId = -1;
+        imageView.setImageDrawable(null);
+    }
+
+    @Override
+    public void onThumbnailLoaded(long id, Bitmap bitmap) {
+        if (id == imageId) {
+            request = null;
+            imageView.setImageBitmap(bitmap);
+        }
     }
 }
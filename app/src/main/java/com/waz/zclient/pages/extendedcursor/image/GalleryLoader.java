@@ -0,0 +1,270 @@
+/**
+ * Wire
+ * Copyright (C) 2018 Wire Swiss GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.waz.zclient.pages.extendedcursor.image;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Matrix;
+import android.os.Handler;
+import android.os.Looper;
+import android.provider.MediaStore;
+import android.util.LruCache;
+import timber.log.Timber;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Loads images for the cursor gallery picker.
+ *
+ * Only ids and orientations of images are queried, newest first, in pages of {@link #PAGE_SIZE}, so opening the picker doesn't have to
+ * load the whole media store. Thumbnails are decoded at grid cell size and kept in a memory-bounded cache.
+ * MediaStore thumbnails are not rotated, so orientation is applied when decoding them.
+ */
+class GalleryLoader {
+
+    static final int PAGE_SIZE = 120;
+
+    // size of MediaStore MINI_KIND thumbnails
+    private static final int MINI_THUMBNAIL_SIZE = 512;
+
+    // part of max heap used for cached thumbnails
+    private static final int CACHE_MEMORY_FRACTION = 16;
+
+    private static final String[] PROJECTION = {MediaStore.Images.Media._ID, MediaStore.Images.Media.ORIENTATION, MediaStore.Images.Media.DATE_ADDED};
+    private static final String SORT_ORDER = MediaStore.Images.Media.DATE_ADDED + " DESC, " + MediaStore.Images.Media._ID + " DESC";
+
+    private final ContentResolver resolver;
+    private final Listener listener;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final ExecutorService queryExecutor = Executors.newSingleThreadExecutor();
+    private final ExecutorService decodeExecutor = Executors.newFixedThreadPool(2);
+
+    private final LruCache<Long, Bitmap> thumbnails = new LruCache<Long, Bitmap>((int) (Runtime.getRuntime().maxMemory() / CACHE_MEMORY_FRACTION)) {
+        @Override
+        protected int sizeOf(Long key, Bitmap value) {
+            return value.getByteCount();
+        }
+    };
+
+    // only accessed on main thread
+    private final List<Image> images = new ArrayList<>();
+    private int generation = 0;
+    private boolean loading = false;
+    private boolean hasMore = true;
+    private boolean closed = false;
+
+    GalleryLoader(ContentResolver resolver, Listener listener) {
+        this.resolver = resolver;
+        this.listener = listener;
+    }
+
+    int getCount() {
+        return images.size();
+    }
+
+    Image getImage(int index) {
+        return images.get(index);
+    }
+
+    /**
+     * Drops all loaded images and starts loading from the first page again, used when media store changes.
+     */
+    void reload() {
+        generation++;
+        loading = false;
+        hasMore = true;
+        loadPage(true);
+    }
+
+    /**
+     * Loads the next page if it's not being loaded already, should be called when list gets close to loaded end.
+     */
+    void loadMore() {
+        if (!loading && hasMore && !closed) {
+            loadPage(false);
+        }
+    }
+
+    private void loadPage(final boolean reset) {
+        loading = true;
+        final int gen = generation;
+        final int offset = reset ? 0 : images.size();
+        queryExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final List<Image> page = queryPage(offset);
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (closed || gen != generation) {
+                            return;
+                        }
+                        loading = false;
+                        hasMore = page.size() == PAGE_SIZE;
+                        if (reset) {
+                            images.clear();
+                            images.addAll(page);
+                            listener.onReset();
+                        } else if (!page.isEmpty()) {
+                            int from = images.size();
+                            images.addAll(page);
+                            listener.onPageLoaded(from, page.size());
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    private List<Image> queryPage(int offset) {
+        List<Image> page = new ArrayList<>(PAGE_SIZE);
+        Cursor c = null;
+        try {
+            c = resolver.query(MediaStore.Images.Media.EXTERNAL_CONTENT_URI,
+                               PROJECTION,
+                               null,
+                               null,
+                               SORT_ORDER + " LIMIT " + PAGE_SIZE + " OFFSET " + offset);
+            if (c != null) {
+                int idColumn = c.getColumnIndexOrThrow(MediaStore.Images.Media._ID);
+                int orientationColumn = c.getColumnIndexOrThrow(MediaStore.Images.Media.ORIENTATION);
+                while (c.moveToNext()) {
+                    page.add(new Image(c.getLong(idColumn), c.getInt(orientationColumn)));
+                }
+            }
+        } catch (Exception e) {
+            Timber.e(e, "Gallery query failed, offset: %d", offset);
+        } finally {
+            if (c != null) {
+                c.close();
+            }
+        }
+        return page;
+    }
+
+    Bitmap getCachedThumbnail(long id) {
+        return thumbnails.get(id);
+    }
+
+    /**
+     * Decodes thumbnail of given image in background, callback is called on main thread.
+     * Returned request should be cancelled when the cell is recycled.
+     */
+    ThumbnailRequest loadThumbnail(final Image image, final int size, final ThumbnailCallback callback) {
+        final long id = image.id;
+        final ThumbnailRequest request = new ThumbnailRequest();
+        request.future = decodeExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+                if (request.cancelled) {
+                    return;
+                }
+                final Bitmap bitmap = decodeThumbnail(image, size);
+                if (bitmap != null) {
+                    thumbnails.put(id, bitmap);
+                }
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!request.cancelled && !closed && bitmap != null) {
+                            callback.onThumbnailLoaded(id, bitmap);
+                        }
+                    }
+                });
+            }
+        });
+        return request;
+    }
+
+    private Bitmap decodeThumbnail(Image image, int size) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = 1;
+        while (size > 0 && MINI_THUMBNAIL_SIZE / (options.inSampleSize * 2) >= size) {
+            options.inSampleSize *= 2;
+        }
+        try {
+            Bitmap bitmap = MediaStore.Images.Thumbnails.getThumbnail(resolver, image.id, MediaStore.Images.Thumbnails.MINI_KIND, options);
+            return bitmap == null ? null : rotate(bitmap, image.orientation);
+        } catch (Exception e) {
+            Timber.w(e, "Decoding gallery thumbnail failed, id: %d", image.id);
+            return null;
+        }
+    }
+
+    private static Bitmap rotate(Bitmap bitmap, int orientation) {
+        if (orientation % 360 == 0) {
+            return bitmap;
+        }
+        Matrix matrix = new Matrix();
+        matrix.postRotate(orientation);
+        Bitmap rotated = Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), matrix, true);
+        if (rotated != bitmap) {
+            bitmap.recycle();
+        }
+        return rotated;
+    }
+
+    void close() {
+        closed = true;
+        queryExecutor.shutdownNow();
+        decodeExecutor.shutdownNow();
+        thumbnails.evictAll();
+        images.clear();
+    }
+
+    static final class Image {
+        final long id;
+        // clockwise rotation in degrees, as stored in MediaStore
+        final int orientation;
+
+        Image(long id, int orientation) {
+            this.id = id;
+            this.orientation = orientation;
+        }
+    }
+
+    static final class ThumbnailRequest {
+        private volatile boolean cancelled = false;
+        private Future<?> future;
+
+        /**
+         * Removes pending decode from the queue, decoding which already started is finished and cached, but not delivered.
+         */
+        void cancel() {
+            cancelled = true;
+            if (future != null) {
+                future.cancel(false);
+            }
+        }
+    }
+
+    interface ThumbnailCallback {
+        void onThumbnailLoaded(long id, Bitmap bitmap);
+    }
+
+    interface Listener {
+        void onReset();
+        void onPageLoaded(int from, int count);
+    }
+}
@@ -22,8 +22,11 @@ import android.content.res.TypedArray;
 import android.os.Parcel;
 import android.os.Parcelable;
 import android.text.Spannable;
+import android.text.SpannableString;
 import android.text.TextPaint;
 import android.text.TextUtils;
+import android.text.method.LinkMovementMethod;
+import android.text.method.MovementMethod;
 import android.text.style.URLSpan;
 import android.text.util.Linkify;
 import android.util.AttributeSet;
@@ -78,6 +81,34 @@ public class LinkTextView extends TypefaceTextView {
         }
     }
 
+    /**
+     * Sets text which was already linkified with {@link LinkTextView#linkify(CharSequence)}.
+     */
+    public void setLinkifiedText(Spannable text) {
+        if (getLinksClickable() && text.getSpans(0, text.length(), URLSpan.class).length > 0) {
+            MovementMethod m = getMovementMethod();
+            if (!(m instanceof LinkMovementMethod)) {
+                setMovementMethod(LinkMovementMethod.getInstance());
+            }
+        }
+        setText(text);
+    }
+
+    /**
+     * Same as {@link LinkTextView#setTextLink(String)} but doesn't need the view, so it can be called on a background thread.
+     */
+    public static Spannable linkify(CharSequence text) {
+        Spannable s = new SpannableString(text);
+        try {
+            if (Linkify.addLinks(s, Linkify.ALL)) {
+                stripUnderlines(s);
+            }
+        } catch (Throwable t) {
+            // ignore
+        }
+        return s;
+    }
+
     /*
      * This part (the method stripUnderlines) of the Wire software uses source coded posted on the StackOverflow site.
      * (http://stackoverflow.com/a/9852280/1751834)
@@ -96,6 +127,11 @@ public class LinkTextView extends TypefaceTextView {
             return;
         }
         Spannable s = (Spannable) getText();
+        stripUnderlines(s);
+        setText(s);
+    }
+
+    private static void stripUnderlines(Spannable s) {
         URLSpan[] spans = s.getSpans(0, s.length(), URLSpan.class);
         for (URLSpan span: spans) {
             int start = s.getSpanStart(span);
@@ -104,7 +140,6 @@ public class LinkTextView extends TypefaceTextView {
             URLSpan spanNew = new URLSpanNoUnderline(span.getURL());
             s.setSpan(spanNew, start, end, 0);
         }
-        setText(s);
     }
 
     private static class URLSpanNoUnderline extends URLSpan {
@@ -17,7 +17,7 @@
  */
 package com.waz.zclient
 
-import android.content.Intent
+import android.content.{ComponentCallbacks2, Intent}
 import android.content.Intent._
 import android.content.res.Configuration
 import android.graphics.drawable.ColorDrawable
@@ -47,6 +47,7 @@ import com.waz.zclient.controllers.navigation.{NavigationControllerObserver, Pag
 import com.waz.zclient.conversation.ConversationController
 import com.waz.zclient.core.stores.conversation.ConversationChangeRequester
 import com.waz.zclient.fragments.ConnectivityFragment
+import com.waz.zclient.messages.parts.TextLayoutCache
 import com.waz.zclient.pages.main.MainPhoneFragment
 import com.waz.zclient.pages.startup.UpdateFragment
 import com.waz.zclient.preferences.dialogs.ChangeHandleFragment
@@ -313,6 +314,11 @@ class MainActivity extends BaseActivity
     getControllerFactory.getNavigationController.removeNavigationControllerObserver(this)
   }
 
+  override def onTrimMemory(level: Int): Unit = {
+    super.onTrimMemory(level)
+    if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) inject[TextLayoutCache].clear()
+  }
+
   override def onBackPressed(): Unit = {
     Option(getSupportFragmentManager.findFragmentById(R.id.fl_main_content)).foreach {
       case f: OnBackPressedListener if f.onBackPressed() => //
@@ -43,7 +43,7 @@ import com.waz.zclient.camera.controllers.{AndroidCameraFactory, GlobalCameraCon
 import com.waz.zclient.collection.controllers.CollectionController
 import com.waz.zclient.common.controllers.global.{AccentColorController, ClientsController, KeyboardController, PasswordController}
 import com.waz.zclient.common.controllers.{SoundController, _}
-import com.waz.zclient.common.views.ImageController
+import com.waz.zclient.common.views.{BlurredBackgroundCache, ImageController}
 import com.waz.zclient.controllers._
 import com.waz.zclient.controllers.camera.ICameraController
 import com.waz.zclient.controllers.confirmation.IConfirmationController
@@ -58,10 +58,12 @@ import com.waz.zclient.controllers.userpreferences.IUserPreferencesController
 import com.waz.zclient.conversation.ConversationController
 import com.waz.zclient.conversation.creation.CreateConversationController
 import com.waz.zclient.conversationlist.ConversationListController
+import com.waz.zclient.conversationlist.views.GroupAvatarCache
 import com.waz.zclient.cursor.CursorController
 import com.waz.zclient.integrations.IntegrationDetailsController
 import com.waz.zclient.messages.controllers.{MessageActionsController, NavigationController}
-import com.waz.zclient.messages.{LikesController, MessageViewFactory, MessagesController, UsersController}
+import com.waz.zclient.messages.parts.TextLayoutCache
+import com.waz.zclient.messages.{LikesController, MessagePartsPlanner, MessageViewFactory, MessagesController, UsersController}
 import com.waz.zclient.notifications.controllers.{CallingNotificationsController, ImageNotificationsController, MessageNotificationsController}
 import com.waz.zclient.pages.main.conversation.controller.IConversationScreenController
 import com.waz.zclient.pages.main.conversationpager.controller.ISlidingPaneController
@@ -132,6 +134,7 @@ object WireApplication {
     bind [PasswordController]      to new PasswordController()
     bind [CallController] to new CallController()
     bind [GlobalCameraController]  to new GlobalCameraController(new AndroidCameraFactory)
+    bind [GroupAvatarCache]        to new GroupAvatarCache()
     bind [SoundController]         to new SoundController
     bind [ThemeController]         to new ThemeController
     bind [SpinnerController]       to new SpinnerController()
@@ -144,6 +147,7 @@ object WireApplication {
     bind [GlobalTrackingController]        to new GlobalTrackingController()
     bind [PreferencesController]           to new PreferencesController()
     bind [ImageController]                 to new ImageController()
+    bind [BlurredBackgroundCache]          to new BlurredBackgroundCache()
     bind [UserAccountsController]          to new UserAccountsController()
 
     bind [SharingController]               to new SharingController()
@@ -184,6 +188,8 @@ object WireApplication {
     bind [AssetsController]          to new AssetsController()
     bind [BrowserController]         to new BrowserController()
     bind [MessageViewFactory]        to new MessageViewFactory()
+    bind [MessagePartsPlanner]       to new MessagePartsPlanner()
+    bind [TextLayoutCache]           to new TextLayoutCache()
 
     bind [ScreenController]          to new ScreenController()
     bind [MessageActionsController]  to new MessageActionsController()
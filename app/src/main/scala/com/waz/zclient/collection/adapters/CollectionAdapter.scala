@@ -30,11 +30,14 @@ import com.waz.model._
 import com.waz.service.ZMessaging
 import com.waz.threading.Threading
 import com.waz.utils.events.{EventContext, Signal}
+import com.waz.ui.MemoryImageCache.BitmapRequest
 import com.waz.utils.returning
 import com.waz.zclient.collection.adapters.CollectionAdapter._
 import com.waz.zclient.collection.controllers.CollectionController._
 import com.waz.zclient.collection.controllers._
 import com.waz.zclient.collection.views._
+import com.waz.zclient.common.views.ImageController.WireImage
+import com.waz.zclient.common.views.ImagePrefetcher
 import com.waz.zclient.conversation.ConversationController
 import com.waz.zclient.messages.RecyclerCursor
 import com.waz.zclient.messages.RecyclerCursor.RecyclerNotifier
@@ -97,6 +100,7 @@ class CollectionAdapter(viewDim: Signal[Dim2])(implicit context: Context, inject
   def messages = contentMode.currentValue.fold(Option.empty[RecyclerCursor])(collectionCursors(_))
 
   Signal(contentMode, viewDim) .on(Threading.Ui){ _ =>
+    imagePrefetcher.cancel()
     notifyDataSetChanged()
   }
 
@@ -142,6 +146,27 @@ class CollectionAdapter(viewDim: Signal[Dim2])(implicit context: Context, inject
     }
   }
 
+  private lazy val imagePrefetcher = new ImagePrefetcher()
+  private lazy val imagePadding = getDimenPx(R.dimen.collections__image_padding)
+
+  /**
+    * Starts loading grid images which will be scrolled into view next, using the same request as CollectionImageView.
+    */
+  def prefetchImages(first: Int, last: Int, direction: Int): Unit =
+    if (first >= 0 && last >= first) {
+      val width = viewDim.currentValue.fold(0)(_.width) / CollectionController.GridColumns - 2 * imagePadding
+      val lookahead = ImagePrefetcher.DefaultLookahead * CollectionController.GridColumns
+      val positions =
+        if (direction > 0) (last + 1) to math.min(getItemCount - 1, last + lookahead)
+        else (first - 1) to math.max(0, first - lookahead) by -1
+
+      val requests = if (width <= 0) Nil else positions.flatMap(getItem) collect {
+        case md if md.msgType == Message.Type.ASSET =>
+          ImagePrefetcher.Request(WireImage(md.assetId), BitmapRequest.Single(width), forceDownload = true)
+      }
+      imagePrefetcher.prefetch(requests, direction)
+    }
+
   def onBackPressed(): Boolean = contentMode.currentValue.get match {
     case AllContent => false
     case _ =>
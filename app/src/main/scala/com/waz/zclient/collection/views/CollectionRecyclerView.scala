@@ -74,6 +74,9 @@ class CollectionRecyclerView(context: Context, attrs: AttributeSet, style: Int)
     }
 
     addOnScrollListener(new OnScrollListener {
+      override def onScrolled(recyclerView: RecyclerView, dx: Int, dy: Int): Unit =
+        if (dy != 0) adapter.prefetchImages(layoutManager.findFirstVisibleItemPosition(), layoutManager.findLastVisibleItemPosition(), math.signum(dy))
+
       override def onScrollStateChanged(recyclerView: RecyclerView, newState: Int): Unit = {
         newState match {
           case RecyclerView.SCROLL_STATE_IDLE =>
@@ -24,8 +24,6 @@ import android.content.Context
 import android.graphics._
 import android.graphics.drawable.Drawable
 import com.waz.model.Dim2
-import com.waz.service.assets.AssetService.BitmapResult.BitmapLoaded
-import com.waz.ui.MemoryImageCache.BitmapRequest
 import com.waz.utils.events.{EventContext, Signal}
 import com.waz.zclient.utils.ViewUtils
 import com.waz.zclient.common.views.ImageAssetDrawable.ScaleType
@@ -36,7 +34,7 @@ class BackgroundDrawable(src: Signal[ImageSource],
                          context: Context)(implicit inj: Injector, eventContext: EventContext) extends Drawable with Injectable {
   import BackgroundDrawable._
 
-  private val images = inject[ImageController]
+  private val backgrounds = inject[BlurredBackgroundCache]
 
   private val bitmapPaint = new Paint(Paint.ANTI_ALIAS_FLAG)
   private val configuration = context.getResources.getConfiguration
@@ -50,14 +48,8 @@ class BackgroundDrawable(src: Signal[ImageSource],
   private val matrix = new Matrix
   private val prevMatrix = new Matrix
 
-  private val bmp = for {
-    src <- src
-    bmp <- images.imageSignal(src, BitmapRequest.Blurred(Math.min(screenSize.width, 300), BlurRadius, BlurPasses), forceDownload = true).collect { case BitmapLoaded(bm, _) => bm }
-  } yield bmp
-
-  private val colorMatrix = new ColorMatrix
-  colorMatrix.setSaturation(SaturationValue)
-  setColorFilter(new ColorMatrixColorFilter(colorMatrix))
+  // bitmaps are already blurred and saturated
+  private val bmp = src.flatMap(backgrounds(_, Math.min(screenSize.width, MaxWidth)))
 
   animator.addUpdateListener(new AnimatorUpdateListener {
     override def onAnimationUpdate(animation: ValueAnimator): Unit = {
@@ -115,6 +107,7 @@ class BackgroundDrawable(src: Signal[ImageSource],
 }
 
 object BackgroundDrawable {
+  val MaxWidth = 300
   val BlurRadius = 25
   val BlurPasses = 6
   val ScaleValue = 1.4f
@@ -0,0 +1,129 @@
+/**
+ * Wire
+ * Copyright (C) 2018 Wire Swiss GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.waz.zclient.common.views
+
+import java.io.{File, FileOutputStream}
+
+import android.content.Context
+import android.graphics._
+import android.util.LruCache
+import com.waz.ZLog.ImplicitTag._
+import com.waz.ZLog._
+import com.waz.model.AssetId
+import com.waz.service.assets.AssetService.BitmapResult.BitmapLoaded
+import com.waz.threading.SerialDispatchQueue
+import com.waz.ui.MemoryImageCache.BitmapRequest
+import com.waz.utils.events.Signal
+import com.waz.utils.returning
+import com.waz.zclient.common.views.BackgroundDrawable._
+import com.waz.zclient.common.views.ImageController.{ImageSource, WireImage}
+import com.waz.zclient.{Injectable, Injector}
+
+import scala.concurrent.Future
+import scala.util.control.NonFatal
+
+/**
+  * Keeps final (blurred and saturated) account background bitmaps, in memory and on disk.
+  *
+  * Blurring self picture takes several RenderScript passes, we don't want to repeat that every time an activity
+  * is created or rotated. Wire images are stored in cache dir, keyed by asset id and blur parameters, so a new
+  * background is only rendered when self picture changes. Other image sources are processed, but not persisted.
+  */
+class BlurredBackgroundCache(implicit inj: Injector, context: Context) extends Injectable {
+  import BlurredBackgroundCache._
+
+  private implicit val dispatcher = new SerialDispatchQueue(name = "BlurredBackgroundCache")
+
+  private lazy val images = inject[ImageController]
+
+  private lazy val dir = returning(new File(context.getCacheDir, DirName))(_.mkdirs())
+
+  // android LruCache is synchronized, shared by all activities
+  private val memory = new LruCache[String, Bitmap](MemoryEntries)
+
+  def apply(src: ImageSource, width: Int): Signal[Bitmap] = src match {
+    case WireImage(id) =>
+      val key = cacheKey(id, width)
+      Option(memory.get(key)) match {
+        case Some(bitmap) => Signal.const(bitmap)
+        case None =>
+          Signal.future(read(key)) flatMap {
+            case Some(bitmap) => Signal.const(bitmap)
+            case None         => render(src, width) flatMap { bitmap => Signal.future(write(key, bitmap)) }
+          }
+      }
+    case _ =>
+      render(src, width)
+  }
+
+  private def render(src: ImageSource, width: Int): Signal[Bitmap] =
+    images.imageSignal(src, BitmapRequest.Blurred(width, BlurRadius, BlurPasses), forceDownload = true)
+      .collect { case BitmapLoaded(bm, _) if bm != null => bm }
+      .flatMap { bm => Signal.future(Future(saturate(bm))) }
+
+  private def read(key: String): Future[Option[Bitmap]] = Future {
+    val file = new File(dir, key)
+    if (!file.exists()) None
+    else returning(Option(BitmapFactory.decodeFile(file.getAbsolutePath))) {
+      case Some(bitmap) =>
+        verbose(s"loaded cached background: $key")
+        memory.put(key, bitmap)
+        file.setLastModified(System.currentTimeMillis())
+      case None =>
+        file.delete()
+    }
+  }
+
+  private def write(key: String, bitmap: Bitmap): Future[Bitmap] = Future {
+    memory.put(key, bitmap)
+    val tmp = new File(dir, s"$key.tmp")
+    try {
+      val out = new FileOutputStream(tmp)
+      try bitmap.compress(Bitmap.CompressFormat.JPEG, JpegQuality, out)
+      finally out.close()
+      tmp.renameTo(new File(dir, key))
+    } catch {
+      case NonFatal(e) =>
+        warn(s"storing background failed: $key", e)
+        tmp.delete()
+    }
+    trim()
+    bitmap
+  }
+
+  // only a few backgrounds (one per account) are needed, older ones are removed
+  private def trim(): Unit =
+    Option(dir.listFiles()).map(_.toSeq).getOrElse(Nil).sortBy(-_.lastModified()).drop(MaxFiles) foreach { _.delete() }
+}
+
+object BlurredBackgroundCache {
+
+  val DirName = "backgrounds"
+  val MemoryEntries = 2
+  val MaxFiles = 4
+  val JpegQuality = 90
+
+  def cacheKey(id: AssetId, width: Int): String = s"${id.str}_${width}_${BlurRadius}_${BlurPasses}_$SaturationValue"
+
+  def saturate(src: Bitmap): Bitmap =
+    returning(Bitmap.createBitmap(src.getWidth, src.getHeight, Bitmap.Config.ARGB_8888)) { result =>
+      val paint = new Paint(Paint.FILTER_BITMAP_FLAG)
+      paint.setColorFilter(new ColorMatrixColorFilter(returning(new ColorMatrix)(_.setSaturation(SaturationValue))))
+      new Canvas(result).drawBitmap(src, 0, 0, paint)
+    }
+}
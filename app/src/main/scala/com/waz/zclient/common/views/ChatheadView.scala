@@ -97,7 +97,8 @@ class ChatheadView(val context: Context, val attrs: AttributeSet, val defStyleAt
 
   private lazy val matrix = new Matrix()
   private lazy val bitmapPaint = new Paint(Paint.ANTI_ALIAS_FLAG)
-  private lazy val integrationDrawHelper = IntegrationSquareDrawHelper()
+  private lazy val integrationDrawHelper = new IntegrationSquareDrawHelper
+  private lazy val bounds = new Rect
 
   ctrl.invalidate.on(Threading.Ui)(_ => invalidate())
 
@@ -185,7 +186,7 @@ class ChatheadView(val context: Context, val attrs: AttributeSet, val defStyleAt
       } { bitmap =>
 
         if (ctrl.chatheadInfo.currentValue.flatten.exists(_.isBot)) {
-          val bounds = new Rect(0, 0, getWidth, getHeight)
+          bounds.set(0, 0, getWidth, getHeight)
           ImageAssetDrawable.ScaleType.CenterInside(matrix, bitmap.getWidth, bitmap.getHeight, Dim2(bounds.width(), bounds.height()))
           matrix.postTranslate(bounds.left, bounds.top)
           integrationDrawHelper.draw(canvas, bitmap, bounds, matrix, bitmapPaint)
@@ -245,18 +245,10 @@ class RoundedImageAssetDrawable (
                                   cornerRadius: Float = 0
                                 )(implicit inj: Injector, eventContext: EventContext) extends ImageAssetDrawable(src, scaleType, request, background, animate) {
 
-  override protected def drawBitmap(canvas: Canvas, bm: Bitmap, matrix: Matrix, bitmapPaint: Paint): Unit = {
-    val tempBm = Bitmap.createBitmap(getBounds.width, getBounds.height, Bitmap.Config.ARGB_8888)
-    val tempCanvas = new Canvas(tempBm)
-
-    tempCanvas.drawBitmap(bm, matrix, null)
-
-    val shader = new BitmapShader(tempBm, Shader.TileMode.CLAMP, Shader.TileMode.CLAMP)
-    val boundsRect = new RectF(0.0f, 0.0f, getBounds.width, getBounds.height)
+  private val renderer = new RoundedBitmapRenderer
 
-    bitmapPaint.setShader(shader)
-    canvas.drawRoundRect(boundsRect, cornerRadius, cornerRadius, bitmapPaint)
-  }
+  override protected def drawBitmap(canvas: Canvas, bm: Bitmap, matrix: Matrix, bitmapPaint: Paint): Unit =
+    renderer.draw(canvas, bm, getBounds, matrix, bitmapPaint, 0f, cornerRadius)
 }
 
 class IntegrationAssetDrawable (
@@ -278,7 +270,7 @@ class IntegrationAssetDrawable (
     paint.setStrokeWidth(StrokeWidth)
   }
 
-  val drawHelper = IntegrationSquareDrawHelper()
+  val drawHelper = new IntegrationSquareDrawHelper
 
   override protected def drawBitmap(canvas: Canvas, bm: Bitmap, matrix: Matrix, bitmapPaint: Paint): Unit = {/*
     val tempBm = Bitmap.createBitmap(getBounds.width, getBounds.height, Bitmap.Config.ARGB_8888)
@@ -300,7 +292,7 @@ class IntegrationAssetDrawable (
   }
 }
 
-case class IntegrationSquareDrawHelper() {
+class IntegrationSquareDrawHelper {
 
   private val StrokeWidth = 2f
   private val StrokeAlpha = 20
@@ -313,27 +305,71 @@ case class IntegrationSquareDrawHelper() {
     paint.setStrokeWidth(StrokeWidth)
   }
 
+  private val renderer = new RoundedBitmapRenderer
+  private val innerRect = new RectF
+  private val outerRect = new RectF
+
   def cornerRadius(size: Float) = size * 0.2f
 
   def draw(canvas: Canvas, bm: Bitmap, bounds: Rect, matrix: Matrix, bitmapPaint: Paint): Unit = {
-    val tempBm = Bitmap.createBitmap(bounds.width, bounds.height, Bitmap.Config.ARGB_8888)
-    val tempCanvas = new Canvas(tempBm)
-
-    tempCanvas.drawBitmap(bm, matrix, null)
-
-    val shader = new BitmapShader(tempBm, Shader.TileMode.CLAMP, Shader.TileMode.CLAMP)
-    val outerRect = new RectF(StrokeWidth, StrokeWidth, bounds.width - StrokeWidth, bounds.height - StrokeWidth)
-    val innerRect = new RectF(StrokeWidth * 2, StrokeWidth * 2, bounds.width - StrokeWidth * 2, bounds.height - StrokeWidth * 2)
+    outerRect.set(StrokeWidth, StrokeWidth, bounds.width - StrokeWidth, bounds.height - StrokeWidth)
+    innerRect.set(StrokeWidth * 2, StrokeWidth * 2, bounds.width - StrokeWidth * 2, bounds.height - StrokeWidth * 2)
 
     val radius = cornerRadius(bounds.width)
 
-    bitmapPaint.setShader(shader)
     canvas.drawRoundRect(innerRect, radius, radius, whitePaint)
-    canvas.drawRoundRect(innerRect, radius, radius, bitmapPaint)
+    renderer.draw(canvas, bm, bounds, matrix, bitmapPaint, StrokeWidth * 2, radius)
     canvas.drawRoundRect(outerRect, radius, radius, borderPaint)
   }
 }
 
+/**
+  * Draws bitmap clipped to a rounded rect, without allocating anything in steady state.
+  *
+  * Bitmap is transformed with given matrix into an intermediate bitmap of bounds size, and its shader is kept for following draws.
+  * Intermediate bitmap (and shader) is only rebuilt when source bitmap, bounds size or matrix change,
+  * the bitmap itself is reused if bounds size didn't change.
+  */
+class RoundedBitmapRenderer {
+
+  // nullable fields, so that checking them in `draw` doesn't allocate
+  private var source: Bitmap = _
+  private var output: Bitmap = _
+  private var shader: BitmapShader = _
+  private val outputMatrix = new Matrix
+  private val outputCanvas = new Canvas
+  private val rect = new RectF
+
+  def draw(canvas: Canvas, bm: Bitmap, bounds: Rect, matrix: Matrix, paint: Paint, inset: Float, radius: Float): Unit =
+    if (bounds.width > 0 && bounds.height > 0) {
+      val sh =
+        if (shader != null && (source eq bm) && outputMatches(bounds) && outputMatrix == matrix) shader
+        else render(bm, bounds, matrix)
+      rect.set(inset, inset, bounds.width - inset, bounds.height - inset)
+      paint.setShader(sh)
+      canvas.drawRoundRect(rect, radius, radius, paint)
+    }
+
+  private def outputMatches(bounds: Rect) =
+    output != null && output.getWidth == bounds.width && output.getHeight == bounds.height
+
+  private def render(bm: Bitmap, bounds: Rect, matrix: Matrix) = {
+    val out =
+      if (outputMatches(bounds) && !output.isRecycled) {
+        output.eraseColor(Color.TRANSPARENT)
+        output
+      } else Bitmap.createBitmap(bounds.width, bounds.height, Bitmap.Config.ARGB_8888)
+    outputCanvas.setBitmap(out)
+    outputCanvas.drawBitmap(bm, matrix, null)
+    outputCanvas.setBitmap(null)
+
+    outputMatrix.set(matrix)
+    source = bm
+    output = out
+    returning(new BitmapShader(out, Shader.TileMode.CLAMP, Shader.TileMode.CLAMP)) { shader = _ }
+  }
+}
+
 class ImageController(implicit inj: Injector) extends Injectable {
 
   val zMessaging = inject[Signal[ZMessaging]]
@@ -0,0 +1,96 @@
+/**
+ * Wire
+ * Copyright (C) 2018 Wire Swiss GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.waz.zclient.common.views
+
+import com.waz.ZLog.ImplicitTag._
+import com.waz.ZLog._
+import com.waz.service.assets.AssetService.BitmapResult.{BitmapLoaded, LoadingFailed}
+import com.waz.threading.Threading
+import com.waz.ui.MemoryImageCache.BitmapRequest
+import com.waz.utils.events.{EventContext, Subscription}
+import com.waz.zclient.common.views.ImageController.ImageSource
+import com.waz.zclient.common.views.ImagePrefetcher._
+import com.waz.zclient.{Injectable, Injector}
+
+/**
+  * Loads images of list items which are about to be scrolled into view, so they are already in memory cache when bound.
+  *
+  * Requests have to use exactly the same BitmapRequest (and width) as the drawable displaying the image, otherwise cached bitmap
+  * wouldn't be reused. Only `maxConcurrent` images are loaded at the same time, pending requests are dropped when scroll direction changes.
+  * Loading is driven by image signal subscriptions, dropping the subscription cancels the load.
+  * Should only be used on UI thread.
+  */
+class ImagePrefetcher(maxConcurrent: Int = DefaultConcurrency)(implicit inj: Injector, ec: EventContext) extends Injectable {
+
+  private val images = inject[ImageController]
+
+  private var direction = 0
+  private var queue = Vector.empty[Request]
+  private var running = Map.empty[Request, Subscription]
+  private var done = Set.empty[Request]
+
+  /**
+    * @param requests images to load, ordered by distance from visible items
+    * @param direction scroll direction, positive when scrolling towards the end of the list
+    */
+  def prefetch(requests: Seq[Request], direction: Int): Unit = {
+    Threading.assertUiThread()
+    if (direction != 0 && direction != this.direction) {
+      cancel()
+      this.direction = direction
+    }
+    queue = requests.filterNot(r => running.contains(r) || done(r)).toVector
+    startNext()
+  }
+
+  def cancel(): Unit = {
+    if (running.nonEmpty) verbose(s"cancelling ${running.size} image prefetches")
+    running.values.foreach(_.destroy())
+    running = Map.empty
+    queue = Vector.empty
+  }
+
+  private def startNext(): Unit =
+    while (running.size < maxConcurrent && queue.nonEmpty) {
+      val r = queue.head
+      queue = queue.tail
+      val sub = images.imageSignal(r.src, r.req, r.forceDownload).on(Threading.Ui) {
+        case BitmapLoaded(_, _) | LoadingFailed(_) => finished(r)
+        case _ =>
+      }
+      // image might have been already cached, in which case subscription could complete immediately
+      if (done(r)) sub.destroy() else running += r -> sub
+    }
+
+  private def finished(r: Request): Unit = {
+    running.get(r).foreach(_.destroy())
+    running -= r
+    // remember recently loaded images, so we don't subscribe again while those are still on screen
+    done = (if (done.size >= MaxDone) Set.empty[Request] else done) + r
+    startNext()
+  }
+}
+
+object ImagePrefetcher {
+
+  val DefaultConcurrency = 3
+  val DefaultLookahead = 6
+  private val MaxDone = 50
+
+  case class Request(src: ImageSource, req: BitmapRequest, forceDownload: Boolean)
+}
@@ -24,14 +24,19 @@ import com.waz.ZLog.ImplicitTag._
 import com.waz.ZLog._
 import com.waz.model._
 import com.waz.service.ZMessaging
+import com.waz.threading.{SerialDispatchQueue, Threading}
 import com.waz.utils.events.{EventContext, EventStream, Signal}
 import com.waz.utils.returning
 import com.waz.zclient.common.controllers.UserAccountsController
 import com.waz.zclient.conversationlist.ConversationListAdapter._
 import com.waz.zclient.conversationlist.views.{IncomingConversationListRow, NormalConversationListRow}
 import com.waz.zclient.pages.main.conversationlist.views.ConversationCallback
+import com.waz.zclient.utils.ListDiff
+import com.waz.zclient.utils.ListDiff.Op
 import com.waz.zclient.{Injectable, Injector, R, ViewHelper}
 
+import scala.concurrent.Future
+
 class ConversationListAdapter(implicit injector: Injector, eventContext: EventContext) extends RecyclerView.Adapter[ConversationRowViewHolder] with Injectable {
 
   setHasStableIds(true)
@@ -47,11 +52,47 @@ class ConversationListAdapter(implicit injector: Injector, eventContext: EventCo
 
   var maxAlpha = 1.0f
 
-  def setData(convs: Seq[ConversationData], incoming: (Seq[ConversationData], Seq[UserId])): Unit = {
+  private val diffQueue = new SerialDispatchQueue(name = "ConversationListDiff")
+
+  // last list passed to setData, only accessed on diffQueue
+  // every diff is computed against previous requested list, so results can be applied on ui thread one after another
+  private var requested = IndexedSeq.empty[ConversationData]
+
+  /**
+    * Updates displayed conversations, changes are computed on background thread and reported with minimal notifications,
+    * so that only actually changed rows are re-bound and item animations are preserved.
+    */
+  def setData(convs: Seq[ConversationData], incoming: (Seq[ConversationData], Seq[UserId])): Unit =
+    Future {
+      val current = convs.toIndexedSeq
+      val changes = ListDiff(requested, current)(_.id, _ != _)
+      requested = current
+      changes
+    } (diffQueue) foreach { changes =>
+      applyData(convs, incoming, changes)
+    } (Threading.Ui)
+
+  private def applyData(convs: Seq[ConversationData], incoming: (Seq[ConversationData], Seq[UserId]), changes: ListDiff.Changes): Unit = {
+    val hadIncoming = _incomingRequests._2.nonEmpty
+    val incomingChanged = _incomingRequests._2 != incoming._2
     _conversations = convs
     _incomingRequests = incoming
-    verbose(s"Conversation list updated => conversations: ${convs.size}, requests: ${incoming._2.size}")
-    notifyDataSetChanged()
+    verbose(s"Conversation list updated => conversations: ${convs.size}, requests: ${incoming._2.size}, inserted: ${changes.inserted}, removed: ${changes.removed}, moved: ${changes.moved}, changed: ${changes.changed}")
+
+    val structural = changes.inserted + changes.removed + changes.moved
+    if (hadIncoming != incoming._2.nonEmpty || (structural > FullUpdateThreshold && structural > convs.size / 2)) {
+      notifyDataSetChanged()
+    } else {
+      val offset = if (hadIncoming) 1 else 0
+      if (hadIncoming && incomingChanged) notifyItemChanged(0)
+      changes foreach {
+        case (Op.Insert, index, count) => notifyItemRangeInserted(offset + index, count)
+        case (Op.Remove, index, count) => notifyItemRangeRemoved(offset + index, count)
+        case (Op.Move, from, to)       => notifyItemMoved(offset + from, offset + to)
+        case (Op.Change, index, count) => notifyItemRangeChanged(offset + index, count, ContentChanged)
+        case _ =>
+      }
+    }
   }
 
   private def getConversation(position: Int): Option[ConversationData] =
@@ -132,6 +173,11 @@ object ConversationListAdapter {
   val NormalViewType = 0
   val IncomingViewType = 1
 
+  val FullUpdateThreshold = 5
+
+  // change payload, rows observe their own content, so there is no need to cross-fade re-bound rows
+  case object ContentChanged
+
   trait ListMode {
     val nameId: Int
     val filter: (ConversationData) => Boolean
@@ -17,35 +17,61 @@
  */
 package com.waz.zclient.conversationlist
 
+import android.app.Activity
+import android.content.Context
+import android.util.LruCache
 import com.waz.model.ConversationData.ConversationType
 import com.waz.model._
 import com.waz.service.ZMessaging
 import com.waz.threading.{CancellableFuture, SerialDispatchQueue, Threading}
 import com.waz.utils._
-import com.waz.utils.events.{AggregatingSignal, EventContext, EventStream, Signal}
+import com.waz.utils.events._
 import com.waz.zclient.common.controllers.UserAccountsController
 import com.waz.zclient.conversationlist.ConversationListAdapter.{Incoming, ListMode, Normal}
 import com.waz.zclient.conversationlist.ConversationListManagerFragment.ConvListUpdateThrottling
+import com.waz.zclient.conversationlist.ConversationRowModels.RowModel
 import com.waz.zclient.conversationlist.views.ConversationAvatarView
 import com.waz.zclient.utils.{UiStorage, UserSignal}
 import com.waz.zclient.{Injectable, Injector}
 import com.waz.ZLog.ImplicitTag._
 
-import scala.collection.mutable
-import scala.concurrent.Future
+import scala.collection.JavaConverters._
+import scala.collection.{breakOut, mutable}
+import scala.concurrent.{Future, Promise}
 
 class ConversationListController(implicit inj: Injector, ec: EventContext) extends Injectable {
 
   import ConversationListController._
 
   val zms = inject[Signal[ZMessaging]]
-  val membersCache = zms map { new MembersCache(_) }
-  val lastMessageCache = zms map { new LastMessageCache(_) }
+  // mapped signals are evaluated again whenever they are wired, instances are kept so that they are only created once per account
+  private val currentMembersCache = new CurrentInstance[ZMessaging, MembersCache](new MembersCache(_), _.destroy())
+  private val currentLastMessageCache = new CurrentInstance[ZMessaging, LastMessageCache](new LastMessageCache(_), _.destroy())
+  private val currentTypingCache = new CurrentInstance[ZMessaging, TypingCache](new TypingCache(_), _.destroy())
+
+  val membersCache = zms map currentMembersCache.apply
+  val lastMessageCache = zms map currentLastMessageCache.apply
+  val typingCache = zms map currentTypingCache.apply
 
   def members(conv: ConvId) = membersCache.flatMap(_.apply(conv))
 
   def lastMessage(conv: ConvId) = lastMessageCache.flatMap(_.apply(conv))
 
+  private implicit lazy val context: Context = inject[Activity]
+
+  private val currentRowModels = new CurrentInstance[(MembersCache, LastMessageCache, TypingCache), ConversationRowModels](
+    { case (members, lastMessages, typing) => new ConversationRowModels(members, lastMessages, typing) },
+    _.destroy()
+  )
+
+  val rowModels = for {
+    members      <- membersCache
+    lastMessages <- lastMessageCache if lastMessages.zms == members.zms
+    typing       <- typingCache if typing.zms == members.zms
+  } yield currentRowModels((members, lastMessages, typing))
+
+  def rowModel(conv: ConvId): Signal[RowModel] = rowModels.flatMap(_.apply(conv))
+
   lazy val userAccountsController = inject[UserAccountsController]
   implicit val uiStorage = inject[UiStorage]
 
@@ -67,28 +93,26 @@ class ConversationListController(implicit inj: Injector, ec: EventContext) exten
     convs      <- z.convsContent.conversationsSignal.throttle(ConvListUpdateThrottling )
   } yield convs.conversations.filter(EstablishedListFilter)
 
+  private val currentListIndex = new CurrentInstance[ZMessaging, ConversationListIndex](new ConversationListIndex(_), _.destroy())
+
+  // single index per account, `nextConversation` reads it with `head` also when the list isn't displayed
+  val listIndex = zms map currentListIndex.apply
+
   def conversationListData(listMode: ListMode) = for {
-    z             <- zms
-    processing    <- z.push.processing
+    index      <- listIndex
+    processing <- index.zms.push.processing
     if !processing
-    conversations <- z.convsStorage.convsSignal
-    incomingConvs = conversations.conversations.filter(Incoming.filter).toSeq
-    members <- Signal.sequence(incomingConvs.map(c => z.membersStorage.activeMembers(c.id).map(_.find(_ != z.selfUserId))):_*)
-  } yield {
-    val regular = conversations.conversations
-      .filter{ conversationData =>
-        listMode.filter(conversationData)
-      }
-      .toSeq
-      .sorted(listMode.sort)
-    val incoming = if (listMode == Normal) (incomingConvs, members.flatten) else (Seq(), Seq())
-    (z.selfUserId, regular, incoming)
-  }
+    regular    <- index.list(listMode)
+    incoming   <- if (listMode == Normal) incomingRequests(index) else Signal.const((Seq.empty[ConversationData], Seq.empty[UserId]))
+  } yield (index.zms.selfUserId, regular, incoming)
+
+  private def incomingRequests(index: ConversationListIndex): Signal[(Seq[ConversationData], Seq[UserId])] = for {
+    convs   <- index.list(Incoming)
+    members <- membersCache.flatMap(_.byConvs(convs.map(_.id).toSet))
+  } yield (convs, convs.flatMap(c => members.getOrElse(c.id, Seq.empty).headOption))
 
   def nextConversation(convId: ConvId): Future[Option[ConvId]] =
-    conversationListData(Normal).head.map {
-      case (_, regular, _) => regular.lift(regular.indexWhere(_.id == convId) + 1).map(_.id)
-    } (Threading.Background)
+    listIndex.head.flatMap(_.next(Normal, convId))(Threading.Background).map(_.map(_.id))(Threading.Background)
 }
 
 object ConversationListController {
@@ -100,49 +124,278 @@ object ConversationListController {
   lazy val EstablishedArchivedListFilter: (ConversationData => Boolean) = { c => ArchivedListFilter(c) && c.convType != ConversationType.WaitForConnection }
   lazy val IntegrationFilter: (ConversationData => Boolean) = { c => c.convType == ConversationType.Group && !c.hidden }
 
+  /**
+    * Keeps the instance created for current source value, so that signals mapping to it can be wired again without creating
+    * a new instance (with its own storage listeners) every time. Replaced instance is destroyed.
+    */
+  class CurrentInstance[A, B](create: A => B, destroy: B => Unit) {
+    private var current = Option.empty[(A, B)]
+
+    def apply(source: A): B = synchronized {
+      current match {
+        case Some((s, instance)) if s == source => instance
+        case _ =>
+          current.foreach { case (_, instance) => destroy(instance) }
+          returning(create(source)) { instance => current = Some((source, instance)) }
+      }
+    }
+  }
+
+  val MaxAvatarMembers = 4
+  val ShuffledMembersCacheSize = 256
+
   // Maintains a short list of members for each conversation.
   // Only keeps up to 4 users other than self user, this list is to be used for avatar in conv list.
   // We keep this always in memory to avoid reloading members list for every list row view (caused performance issues)
-  class MembersCache(zms: ZMessaging)(implicit inj: Injector, ec: EventContext) extends Injectable {
+  // Members are kept in a keyed store, so that change in one conversation only notifies subscribers of that conversation.
+  class MembersCache(val zms: ZMessaging)(implicit inj: Injector, ec: EventContext) extends Injectable {
     private implicit val dispatcher = new SerialDispatchQueue(name = "MembersCache")
 
-    private def entries(convMembers: Seq[ConversationMemberData]) =
-      convMembers.groupBy(_.convId).map { case (convId, ms) =>
-        val otherUsers = ms.collect { case ConversationMemberData(user, _) if user != zms.selfUserId => user }
-        convId -> ConversationAvatarView.shuffle(otherUsers, convId).take(4)
-      }
+    // only accessed on dispatcher
+    private val members = new mutable.HashMap[ConvId, Seq[UserId]]
+    private val subscribers = new mutable.HashMap[ConvId, Set[ConvMembersSignal]]
+    private var pending = Option(Set.empty[ConvId]) // conversations updated before initial load completed
+    private var reloading = Future.successful(())
+
+    // avatar members order only depends on conversation and its member set, so it doesn't have to be shuffled again for every update
+    private val shuffled = new LruCache[(ConvId, Set[UserId]), Seq[UserId]](ShuffledMembersCacheSize)
 
-    val updatedEntries = EventStream.union(
+    private val loaded = Promise[Unit]()
+
+    /**
+      * Emits members of conversations for which avatar members list actually changed.
+      */
+    val onChanged = EventStream[Map[ConvId, Seq[UserId]]]()
+
+    private val sub = EventStream.union(
       zms.membersStorage.onAdded.map(_.map(_.convId).toSet),
       zms.membersStorage.onDeleted.map(_.map(_._2).toSet)
-    ) mapAsync { convs =>
-      zms.membersStorage.getByConvs(convs) map entries
+    ).on(dispatcher) { convs =>
+      pending match {
+        case Some(convIds) => pending = Some(convIds ++ convs)
+        case None          => reload(convs)
+      }
+    }
+
+    zms.membersStorage.list() foreach { all =>
+      update(entries(all.map(_.convId).toSet, all))
+      pending.foreach(convs => if (convs.nonEmpty) reload(convs))
+      pending = None
+      subscribers foreach { case (conv, ss) => ss.foreach(_ ! members.getOrElse(conv, Seq.empty)) }
+      loaded.success(())
+    }
+
+    def apply(conv: ConvId): Signal[Seq[UserId]] = new ConvMembersSignal(conv)
+
+    def destroy(): Unit = sub.destroy()
+
+    /**
+      * Signal with avatar members of given conversations, only updated when one of those conversations changes.
+      */
+    def byConvs(convs: Set[ConvId]): Signal[Map[ConvId, Seq[UserId]]] =
+      new RefreshingSignal[Map[ConvId, Seq[UserId]], Map[ConvId, Seq[UserId]]](CancellableFuture.lift(get(convs)), onChanged.filter(_.keysIterator.exists(convs)))
+
+    def get(convs: Iterable[ConvId]): Future[Map[ConvId, Seq[UserId]]] =
+      loaded.future flatMap { _ => Future(convs.map(c => c -> members.getOrElse(c, Seq.empty[UserId])).toMap) }
+
+    private def reload(convs: Set[ConvId]): Unit =
+      reloading = reloading flatMap { _ => zms.membersStorage.getByConvs(convs) } map { ms => update(entries(convs, ms)) }
+
+    private def entries(convs: Set[ConvId], convMembers: Seq[ConversationMemberData]): Map[ConvId, Seq[UserId]] = {
+      val byConv = convMembers.groupBy(_.convId)
+      convs.map { convId =>
+        val otherUsers = byConv.getOrElse(convId, Seq.empty).collect { case ConversationMemberData(user, _) if user != zms.selfUserId => user }
+        convId -> avatarMembers(convId, otherUsers.toSet)
+      } (breakOut)
     }
 
-    val members = new AggregatingSignal[Map[ConvId, Seq[UserId]], Map[ConvId, Seq[UserId]]](updatedEntries, zms.membersStorage.list() map entries, _ ++ _)
+    private def avatarMembers(conv: ConvId, users: Set[UserId]) =
+      if (users.isEmpty) Seq.empty[UserId]
+      else Option(shuffled.get((conv, users))).getOrElse {
+        returning(ConversationAvatarView.shuffle(users.toSeq.sortBy(_.str), conv).take(MaxAvatarMembers)) { shuffled.put((conv, users), _) }
+      }
 
-    def apply(conv: ConvId) : Signal[Seq[UserId]] = members.map(_.getOrElse(conv, Seq.empty[UserId]))
+    private def update(entries: Map[ConvId, Seq[UserId]]): Unit = {
+      val changed = entries filter { case (conv, ms) => members.getOrElse(conv, Seq.empty) != ms }
+      changed foreach { case (conv, ms) =>
+        if (ms.isEmpty) members -= conv else members(conv) = ms
+        subscribers.get(conv).foreach(_.foreach(_ ! ms))
+      }
+      if (changed.nonEmpty) onChanged ! changed
+    }
+
+    private class ConvMembersSignal(conv: ConvId) extends SourceSignal[Seq[UserId]](None) {
+
+      override protected def onWire(): Unit = dispatcher {
+        subscribers(conv) = subscribers.getOrElse(conv, Set.empty) + this
+        if (pending.isEmpty) this ! members.getOrElse(conv, Seq.empty)
+      }
+
+      override protected def onUnwire(): Unit = dispatcher {
+        val ss = subscribers.getOrElse(conv, Set.empty) - this
+        if (ss.isEmpty) subscribers -= conv else subscribers(conv) = ss
+      }
+    }
+  }
+
+  // Single listener for typing events of all conversations, keeps typing users per conversation
+  // and dispatches changes only to subscribers of that conversation (instead of every list row filtering all events).
+  class TypingCache(val zms: ZMessaging)(implicit ec: EventContext) {
+    private implicit val dispatcher = new SerialDispatchQueue(name = "TypingCache")
+
+    // only accessed on dispatcher
+    private val typing = new mutable.HashMap[ConvId, Seq[UserId]]
+    private val subscribers = new mutable.HashMap[ConvId, Set[ConvTypingSignal]]
+
+    private val sub = zms.typing.onTypingChanged.on(dispatcher) { case (conv, users) =>
+      val ids = users.map(_.id)
+      if (typing.getOrElse(conv, Seq.empty) != ids) {
+        if (ids.isEmpty) typing -= conv else typing(conv) = ids
+        subscribers.get(conv).foreach(_.foreach(_ ! ids))
+      }
+    }
+
+    /**
+      * Typing users of given conversation, only updated when those actually change.
+      */
+    def apply(conv: ConvId): Signal[Seq[UserId]] = new ConvTypingSignal(conv)
+
+    def destroy(): Unit = sub.destroy()
+
+    private class ConvTypingSignal(conv: ConvId) extends SourceSignal[Seq[UserId]](None) {
+
+      override protected def onWire(): Unit = dispatcher {
+        subscribers(conv) = subscribers.getOrElse(conv, Set.empty) + this
+        this ! typing.getOrElse(conv, Seq.empty)
+      }
+
+      override protected def onUnwire(): Unit = dispatcher {
+        val ss = subscribers.getOrElse(conv, Set.empty) - this
+        if (ss.isEmpty) subscribers -= conv else subscribers(conv) = ss
+      }
+    }
   }
 
+  val LastMessageCacheSize = 500
+  val LastMessagePageSize = 50 // has to stay below sqlite limit of compound select terms (500)
+
+  /**
+    * @param hits number of conversations for which last message was already cached
+    * @param loaded number of conversations for which last message had to be loaded from db
+    * @param queries number of db queries used to load them
+    */
+  case class LastMessageStats(hits: Int, loaded: Int, queries: Int, evictions: Int)
 
-  // Keeps last message for each conversation, this is needed because MessagesStorage is not
+  // Keeps last message for recently used conversations, this is needed because MessagesStorage is not
   // supposed to be used for multiple conversations at the same time, as it loads an index of all conv messages.
   // Using MessagesStorage with multiple/all conversations forces it to reload full msgs index on every conv switch.
-  class LastMessageCache(zms: ZMessaging)(implicit inj: Injector, ec: EventContext) extends Injectable {
+  // Missing entries are loaded for whole pages of conversations with a single query, and updated from storage change events.
+  // Changes received while a conversation is being loaded are merged with the query result, deleted last messages are re-queried.
+  class LastMessageCache(val zms: ZMessaging, maxSize: Int = LastMessageCacheSize)(implicit inj: Injector, ec: EventContext) extends Injectable {
+    private implicit val dispatcher = new SerialDispatchQueue(name = "LastMessageCache")
 
-    private val cache = new mutable.HashMap[ConvId, Signal[Option[MessageData]]]
+    private var hits = 0
+    private var loaded = 0
+    private var queries = 0
+    private var evictions = 0
 
-    private val changeEvents = zms.messagesStorage.onChanged map { msgs => msgs.groupBy(_.convId).mapValues(_.maxBy(_.time)) }
+    // only accessed on dispatcher
+    private val cache = new LruCache[ConvId, Option[MessageData]](maxSize) {
+      override def entryRemoved(evicted: Boolean, key: ConvId, oldValue: Option[MessageData], newValue: Option[MessageData]): Unit =
+        if (evicted) evictions += 1
+    }
+
+    // only accessed on dispatcher, newest change received for conversations which are currently being loaded
+    private val loading = new mutable.HashMap[ConvId, Option[MessageData]]
+    private val deletedWhileLoading = new mutable.HashSet[MessageId]
+
+    /**
+      * Emits last messages which changed, only for cached conversations.
+      */
+    val onUpdated = EventStream[Map[ConvId, Option[MessageData]]]()
+
+    private val changedSub = zms.messagesStorage.onChanged.on(dispatcher) { msgs =>
+      val updated = msgs.groupBy(_.convId) flatMap { case (conv, ms) =>
+        val msg = ms.maxBy(_.time)
+        loading.get(conv) foreach { pending => loading(conv) = newer(pending, Some(msg)) }
+        Option(cache.get(conv)) collect { case last if !last.exists(_.time.isAfter(msg.time)) =>
+          cache.put(conv, Some(msg))
+          conv -> Some(msg)
+        }
+      }
+      if (updated.nonEmpty) onUpdated ! updated
+    }
+
+    private val deletedSub = zms.messagesStorage.onDeleted.on(dispatcher) { ids =>
+      val deleted = ids.toSet
+      if (loading.nonEmpty) deletedWhileLoading ++= deleted
+      loading.keys.toVector foreach { conv => if (loading(conv).exists(m => deleted(m.id))) loading(conv) = None }
+      val stale = cache.snapshot().asScala.collect { case (conv, Some(last)) if deleted(last.id) => conv }.toVector
+      if (stale.nonEmpty) refresh(stale)
+    }
+
+    private def newer(a: Option[MessageData], b: Option[MessageData]) = (a, b) match {
+      case (Some(x), Some(y)) => if (y.time.isBefore(x.time)) a else b
+      case _ => a.orElse(b)
+    }
 
-    private def updateEvents(conv: ConvId) = changeEvents.map(_.get(conv)).collect { case Some(m) => m }
+    private def refresh(convs: Seq[ConvId]): Unit = {
+      convs foreach cache.remove
+      load(convs) foreach { lasts => onUpdated ! lasts }
+    }
 
-    private def getLastMessage(conv: ConvId) = CancellableFuture.lift(zms.storage.db.read { MessageData.MessageDataDao.last(conv)(_) })
+    def apply(conv: ConvId): Signal[Option[MessageData]] =
+      new AggregatingSignal[Map[ConvId, Option[MessageData]], Option[MessageData]](onUpdated, get(Seq(conv)).map(_.getOrElse(conv, None)), { (last, updates) =>
+        updates.getOrElse(conv, last)
+      })
 
-    def apply(conv: ConvId): Signal[Option[MessageData]] = cache.getOrElseUpdate(conv,
-      new AggregatingSignal[MessageData, Option[MessageData]](updateEvents(conv), getLastMessage(conv), {
-        case (res @ Some(last), update) if last.time.isAfter(update.time) => res
-        case (_, update) => Some(update)
-      }))
+    /**
+      * Returns last messages for all given conversations, loading missing ones in bulk.
+      */
+    def get(convs: Seq[ConvId]): Future[Map[ConvId, Option[MessageData]]] = Future {
+      val cached = convs.flatMap(c => Option(cache.get(c)).map(c -> _)).toMap
+      hits += cached.size
+      (cached, convs.filterNot(cached.contains).distinct)
+    } flatMap { case (cached, missing) =>
+      load(missing).map(cached ++ _)
+    }
+
+    def destroy(): Unit = {
+      changedSub.destroy()
+      deletedSub.destroy()
+    }
+
+    def stats: Future[LastMessageStats] = Future(LastMessageStats(hits, loaded, queries, evictions))
+
+    private def load(convs: Seq[ConvId]): Future[Map[ConvId, Option[MessageData]]] =
+      if (convs.isEmpty) Future.successful(Map.empty)
+      else {
+        convs foreach { conv => loading(conv) = loading.getOrElse(conv, None) }
+        Future.traverse(convs.grouped(LastMessagePageSize).toVector) { page =>
+          queries += 1
+          zms.storage.db.read { db => MessageData.MessageDataDao.list(db.rawQuery(lastMessagesQuery(page), null)) }
+        } map { pages =>
+          val msgs = pages.flatten.groupBy(_.convId).map { case (conv, ms) => conv -> ms.maxBy(_.time) }
+          loaded += convs.size
+          val lasts = convs.map { conv =>
+            // query result may be older than a change received while loading, or than a concurrent load of the same conversation
+            val last = newer(newer(msgs.get(conv), loading.remove(conv).flatten), Option(cache.get(conv)).flatten)
+            conv -> last
+          }
+          val (removed, valid) = lasts.partition(_._2.exists(m => deletedWhileLoading(m.id)))
+          if (loading.isEmpty) deletedWhileLoading.clear()
+          valid foreach { case (conv, last) => cache.put(conv, last) }
+          if (removed.nonEmpty) refresh(removed.map(_._1))
+          valid.toMap
+        }
+      }
   }
 
+  // one `ORDER BY time DESC LIMIT 1` select per conversation, so each of them is a single seek in (conv, time) index
+  def lastMessagesQuery(convs: Seq[ConvId]): String = {
+    import MessageData.MessageDataDao.{Conv, Time, table}
+    convs.map { c =>
+      s"SELECT * FROM (SELECT * FROM ${table.name} WHERE ${Conv.name} = '${c.str.replace("'", "''")}' ORDER BY ${Time.name} DESC LIMIT 1)"
+    }.mkString(" UNION ALL ")
+  }
 }
@@ -0,0 +1,161 @@
+/**
+ * Wire
+ * Copyright (C) 2018 Wire Swiss GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.waz.zclient.conversationlist
+
+import java.util.{Comparator, TreeSet}
+
+import com.waz.ZLog.ImplicitTag._
+import com.waz.ZLog._
+import com.waz.model.{ConvId, ConversationData}
+import com.waz.service.ZMessaging
+import com.waz.threading.SerialDispatchQueue
+import com.waz.utils.events.{EventContext, Signal}
+import com.waz.zclient.conversationlist.ConversationListAdapter._
+import com.waz.zclient.conversationlist.ConversationListIndex._
+
+import scala.collection.JavaConverters._
+import scala.collection.mutable
+import scala.concurrent.{Future, Promise}
+
+/**
+  * Keeps conversations of every list mode in sorted trees, which are updated incrementally from conversations storage changes.
+  *
+  * Filtering and sorting all conversations on every change was visible on low end devices with thousands of conversations,
+  * here every changed conversation is only removed and re-inserted in O(log n). Sorted lists are still published as a whole,
+  * as this is what the list adapter expects, but this is a simple copy of already ordered tree.
+  */
+class ConversationListIndex(val zms: ZMessaging)(implicit ec: EventContext) {
+
+  private implicit val dispatcher = new SerialDispatchQueue(name = "ConversationListIndex")
+
+  // only accessed on dispatcher
+  private val indices = ListModes.map(mode => mode -> new SortedIndex(mode)).toMap
+  private var pending = Option(Vector.empty[Update])
+
+  private val loaded = Promise[Unit]()
+
+  private val lists = ListModes.map(mode => mode -> Signal[IndexedSeq[ConversationData]]()).toMap
+
+  private val subs = Seq(
+    zms.convsStorage.onAdded.on(dispatcher) { convs => onUpdates(convs.map(Upsert)) },
+    zms.convsStorage.onUpdated.on(dispatcher) { updates => onUpdates(updates.map { case (_, conv) => Upsert(conv) }) },
+    zms.convsStorage.onDeleted.on(dispatcher) { ids => onUpdates(ids.map(Delete)) }
+  )
+
+  zms.convsStorage.convsSignal.head foreach { convs =>
+    // updates received while loading are applied on top of loaded state
+    val updates = convs.conversations.toVector.map(Upsert) ++ pending.getOrElse(Vector.empty)
+    pending = None
+    applyUpdates(updates)
+    ListModes foreach publish
+    verbose(s"conversation list index loaded: ${convs.conversations.size} conversations")
+    loaded.success(())
+  }
+
+  /**
+    * Sorted conversations displayed in given list mode.
+    */
+  def list(mode: ListMode): Signal[IndexedSeq[ConversationData]] = lists(mode)
+
+  /**
+    * Returns conversation following given one in list, or first one if given conversation is not in list (anymore).
+    */
+  def next(mode: ListMode, conv: ConvId): Future[Option[ConversationData]] =
+    loaded.future flatMap { _ => Future(indices(mode).next(conv)) }
+
+  /**
+    * Stops listening to storage changes, called when index of other account replaces this one.
+    */
+  def destroy(): Unit = subs.foreach(_.destroy())
+
+  private def onUpdates(updates: Seq[Update]): Unit = pending match {
+    case Some(buffered) => pending = Some(buffered ++ updates)
+    case None => applyUpdates(updates) foreach publish
+  }
+
+  private def applyUpdates(updates: Seq[Update]): Set[ListMode] = {
+    val changed = Set.newBuilder[ListMode]
+    updates foreach { update =>
+      indices.valuesIterator foreach { index =>
+        val res = update match {
+          case Upsert(conv) => index.update(conv)
+          case Delete(id)   => index.remove(id)
+        }
+        if (res) changed += index.mode
+      }
+    }
+    changed.result()
+  }
+
+  private def publish(mode: ListMode): Unit = lists(mode).publish(indices(mode).toVector, dispatcher)
+}
+
+object ConversationListIndex {
+
+  val ListModes = Seq(Normal, Archive, Incoming, Integration)
+
+  sealed trait Update
+  case class Upsert(conv: ConversationData) extends Update
+  case class Delete(conv: ConvId) extends Update
+
+  /**
+    * List mode ordering with conversation id as tie breaker, tree would otherwise drop conversations which compare as equal.
+    */
+  def comparator(ordering: Ordering[ConversationData]) = new Comparator[ConversationData] {
+    override def compare(a: ConversationData, b: ConversationData): Int = {
+      val res = ordering.compare(a, b)
+      if (res != 0) res else a.id.str.compareTo(b.id.str)
+    }
+  }
+
+  class SortedIndex(val mode: ListMode) {
+    private val byId = new mutable.HashMap[ConvId, ConversationData]
+    private val sorted = new TreeSet[ConversationData](comparator(mode.sort))
+
+    def size = byId.size
+
+    /**
+      * Returns true if list content changed.
+      */
+    def update(conv: ConversationData): Boolean = {
+      val prev = byId.get(conv.id)
+      if (prev.contains(conv)) false
+      else {
+        prev foreach { p =>
+          sorted.remove(p)
+          byId -= p.id
+        }
+        val included = mode.filter(conv)
+        if (included) {
+          sorted.add(conv)
+          byId(conv.id) = conv
+        }
+        included || prev.nonEmpty
+      }
+    }
+
+    def remove(id: ConvId): Boolean = byId.remove(id).exists(sorted.remove)
+
+    def next(id: ConvId): Option[ConversationData] = byId.get(id) match {
+      case Some(conv) => Option(sorted.higher(conv))
+      case None       => if (sorted.isEmpty) None else Some(sorted.first())
+    }
+
+    def toVector: IndexedSeq[ConversationData] = sorted.iterator.asScala.toVector
+  }
+}
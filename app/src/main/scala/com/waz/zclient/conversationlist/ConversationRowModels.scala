@@ -0,0 +1,272 @@
+/**
+ * Wire
+ * Copyright (C) 2018 Wire Swiss GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.waz.zclient.conversationlist
+
+import android.content.Context
+import com.waz.ZLog.ImplicitTag._
+import com.waz.ZLog._
+import com.waz.model.ConversationData.ConversationType
+import com.waz.model._
+import com.waz.service.ZMessaging
+import com.waz.service.call.CallInfo
+import com.waz.threading.{CancellableFuture, SerialDispatchQueue}
+import com.waz.utils.events.{EventContext, Signal, Subscription}
+import com.waz.zclient.R
+import com.waz.zclient.conversationlist.ConversationListController.{LastMessageCache, MembersCache, TypingCache}
+import com.waz.zclient.conversationlist.ConversationRowModels._
+import com.waz.zclient.conversationlist.views.ConversationBadge
+import com.waz.zclient.conversationlist.views.ConversationListRow.{badgeStatusForConversation, subtitleStringForLastMessages}
+import com.waz.zclient.utils.ContextUtils.getResourceFloat
+
+import scala.collection.mutable
+import scala.concurrent.Future
+import scala.concurrent.duration._
+
+/**
+  * Prepares immutable models for conversation list rows.
+  *
+  * Rows used to build separate signal chains for title, subtitle, badge and avatar, so every push burst re-evaluated
+  * all of them on ui thread. Here we only track conversations which were recently bound, listen to storage changes once,
+  * and recompute models of affected conversations in a single background pass. All data needed for a batch of
+  * conversations is loaded with bulk storage requests, last messages come from shared LastMessageCache.
+  */
+class ConversationRowModels(members: MembersCache, lastMessageCache: LastMessageCache, typingCache: TypingCache)(implicit ec: EventContext, context: Context) {
+
+  private implicit val dispatcher = new SerialDispatchQueue(name = "ConversationRowModels")
+
+  private val zms: ZMessaging = members.zms
+
+  private val models = Signal(Map.empty[ConvId, RowModel])
+
+  // all mutable state is only accessed on dispatcher
+  private val tracked       = new mutable.LinkedHashSet[ConvId]
+  private val convs         = new mutable.HashMap[ConvId, ConversationData]
+  private val typing        = new mutable.HashMap[ConvId, UserId]
+  private val typingSubs    = new mutable.HashMap[ConvId, Subscription]
+  private val userRefs      = new mutable.HashMap[ConvId, Set[UserId]]
+  private var calls         = Map.empty[ConvId, CallInfo]
+
+  private val dirty = new mutable.HashSet[ConvId]
+  private var scheduled = false
+  private var computed = 0
+
+  private var subs = Set.empty[Subscription]
+
+  private lazy val activeOpacity = getResourceFloat(R.dimen.conversation_avatar_alpha_active)
+  private lazy val inactiveOpacity = getResourceFloat(R.dimen.conversation_avatar_alpha_inactive)
+
+  subs += zms.convsStorage.onChanged.on(dispatcher) { cs =>
+    cs foreach { c =>
+      if (tracked(c.id)) {
+        convs(c.id) = c
+        dirty += c.id
+      }
+    }
+    schedule()
+  }
+
+  subs += members.onChanged.on(dispatcher) { changed =>
+    dirty ++= changed.keys.filter(tracked)
+    schedule()
+  }
+
+  subs += lastMessageCache.onUpdated.on(dispatcher) { updates =>
+    dirty ++= updates.keys.filter(tracked)
+    schedule()
+  }
+
+  subs += zms.calling.availableCalls.on(dispatcher) { cs =>
+    val changed = (cs.keySet -- calls.keySet) ++ (calls.keySet -- cs.keySet)
+    calls = cs
+    dirty ++= changed.filter(tracked)
+    schedule()
+  }
+
+  subs += zms.usersStorage.onChanged.on(dispatcher) { users =>
+    val ids = users.map(_.id).toSet
+    userRefs foreach { case (conv, refs) => if (refs.exists(ids)) dirty += conv }
+    schedule()
+  }
+
+  /**
+    * Returns model for given conversation, starting to track it if needed.
+    * Only recently requested conversations are tracked, models of others are evicted.
+    */
+  def apply(conv: ConvId): Signal[RowModel] = {
+    dispatcher { track(conv) }
+    models.map(_.get(conv)).collect { case Some(model) => model }
+  }
+
+  def computedCount: Future[Int] = Future(computed)
+
+  /**
+    * Stops listening to storage changes, called when this instance is replaced (e.g. on account switch).
+    */
+  def destroy(): Unit = {
+    subs.foreach(_.destroy())
+    subs = Set.empty
+    dispatcher {
+      typingSubs.valuesIterator.foreach(_.destroy())
+      typingSubs.clear()
+    }
+  }
+
+  private def track(conv: ConvId): Unit =
+    if (tracked.remove(conv)) tracked += conv
+    else {
+      tracked += conv
+      dirty += conv
+      typingSubs(conv) = typingCache(conv).on(dispatcher) { users => onTypingChanged(conv, users.headOption) }
+      if (tracked.size > MaxTracked) evict(tracked.head)
+      schedule()
+    }
+
+  private def evict(conv: ConvId): Unit = {
+    tracked -= conv
+    convs -= conv
+    typing -= conv
+    typingSubs.remove(conv).foreach(_.destroy())
+    userRefs -= conv
+    dirty -= conv
+    models.mutate(_ - conv)
+  }
+
+  private def schedule(): Unit =
+    if (!scheduled && dirty.nonEmpty) {
+      scheduled = true
+      CancellableFuture.delay(BatchDelay) flatMap { _ => CancellableFuture.lift(update()) } onComplete { _ =>
+        scheduled = false
+        schedule()
+      }
+    }
+
+  private def update(): Future[Unit] = {
+    val ids = dirty.toVector
+    dirty.clear()
+
+    for {
+      _            <- loadConversations(ids.filterNot(convs.contains))
+      convMembers  <- members.get(ids)
+      lastMessages <- lastMessageCache.get(ids)
+      users        <- loadUsers(ids.flatMap(id => usersNeeded(id, convMembers(id), lastMessages.getOrElse(id, None))))
+    } yield {
+      val updated = ids.flatMap { id =>
+        convs.get(id).filter(_ => tracked(id)) map { conv =>
+          if (conv.displayName == "") {
+            // XXX: this is a hack for some random errors, sometimes conv has empty name which is never updated
+            zms.conversations.forceNameUpdate(conv.id)
+          }
+          val lastMessage = lastMessages.getOrElse(id, None)
+          userRefs(id) = usersNeeded(id, convMembers(id), lastMessage)
+          id -> model(conv, convMembers(id), lastMessage, users)
+        }
+      }
+      computed += updated.size
+      verbose(s"updated ${updated.size} row models, tracked: ${tracked.size}")
+      if (updated.nonEmpty) models.mutate(_ ++ updated)
+    }
+  }
+
+  private def onTypingChanged(conv: ConvId, user: Option[UserId]): Unit =
+    if (tracked(conv) && typing.get(conv) != user) {
+      user match {
+        case Some(u) => typing(conv) = u
+        case None    => typing -= conv
+      }
+      dirty += conv
+      schedule()
+    }
+
+  private def loadConversations(ids: Seq[ConvId]) =
+    if (ids.isEmpty) Future.successful(())
+    else zms.convsStorage.getAll(ids) map { cs =>
+      cs.flatten foreach { c => if (tracked(c.id)) convs(c.id) = c }
+    }
+
+  private def loadUsers(ids: Seq[UserId]) =
+    if (ids.isEmpty) Future.successful(Map.empty[UserId, UserData])
+    else zms.usersStorage.getAll(ids.distinct) map { _.flatten.map(u => u.id -> u).toMap }
+
+  private def lastUnreadMessage(conv: ConvId, lastMessage: Option[MessageData]) = for {
+    c   <- convs.get(conv) if c.unreadCount.total > 0
+    msg <- lastMessage if msg.userId != zms.selfUserId
+  } yield msg
+
+  private def usersNeeded(conv: ConvId, memberIds: Seq[UserId], lastMessage: Option[MessageData]): Set[UserId] =
+    memberIds.headOption.toSet ++
+      typing.get(conv) ++
+      lastUnreadMessage(conv, lastMessage).fold(Set.empty[UserId])(msg => msg.members + msg.userId)
+
+  private def model(conv: ConversationData, memberIds: Seq[UserId], lastMessage: Option[MessageData], users: Map[UserId, UserData]): RowModel = {
+    val otherUser = memberIds.headOption.flatMap(users.get)
+    val typingUser = typing.get(conv.id).flatMap(users.get)
+    val lastUnread = lastUnreadMessage(conv.id, lastMessage)
+
+    val subtitle = subtitleStringForLastMessages(
+      conv,
+      otherUser,
+      memberIds.toSet,
+      lastMessage,
+      lastUnread,
+      lastUnread.flatMap(m => users.get(m.userId)),
+      lastUnread.fold(Vector.empty[UserData])(_.members.toVector.flatMap(users.get)),
+      typingUser,
+      zms.selfUserId)
+
+    val availability =
+      if (zms.teamId.nonEmpty && memberIds.size == 1) otherUser.fold[Availability](Availability.None)(_.availability)
+      else Availability.None
+
+    val avatarType =
+      if (conv.convType == ConversationType.Group && memberIds.size == 1 && conv.team.nonEmpty) ConversationType.OneToOne
+      else conv.convType
+
+    val inactive = (memberIds.isEmpty && conv.convType == ConversationType.Group) || conv.convType == ConversationType.WaitForConnection || !conv.isActive
+
+    RowModel(
+      conv,
+      conv.displayName,
+      subtitle,
+      badgeStatusForConversation(conv, conv.unreadCount.messages, typingUser.nonEmpty, calls),
+      availability,
+      avatarType,
+      memberIds,
+      if (inactive) inactiveOpacity else activeOpacity)
+  }
+}
+
+object ConversationRowModels {
+
+  val MaxTracked = 64
+  val BatchDelay = 50.millis
+
+  /**
+    * Everything needed to display conversation list row.
+    * @param members other members to show in avatar (already shuffled and limited by MembersCache)
+    */
+  case class RowModel(conv:         ConversationData,
+                      title:        String,
+                      subtitle:     String,
+                      badge:        ConversationBadge.Status,
+                      availability: Availability,
+                      avatarType:   ConversationType,
+                      members:      Seq[UserId],
+                      opacity:      Float) {
+    def convId = conv.id
+  }
+}
@@ -24,7 +24,7 @@ import java.util.UUID
 import android.content.Context
 import android.util.AttributeSet
 import android.view.View
-import android.widget.FrameLayout
+import android.widget.{FrameLayout, ImageView}
 import android.widget.FrameLayout.LayoutParams
 import com.waz.model.ConversationData.ConversationType
 import com.waz.model.{ConvId, UserId}
@@ -46,10 +46,7 @@ class ConversationAvatarView (context: Context, attrs: AttributeSet, style: Int)
 
   private val groupBackgroundDrawable = getDrawable(R.drawable.conversation_group_avatar_background)
 
-  private val avatarStartTop = ViewUtils.getView(this, R.id.conversation_avatar_start_top).asInstanceOf[ChatheadView]
-  private val avatarEndTop = ViewUtils.getView(this, R.id.conversation_avatar_end_top).asInstanceOf[ChatheadView]
-  private val avatarStartBottom = ViewUtils.getView(this, R.id.conversation_avatar_start_bottom).asInstanceOf[ChatheadView]
-  private val avatarEndBottom = ViewUtils.getView(this, R.id.conversation_avatar_end_bottom).asInstanceOf[ChatheadView]
+  private val avatarComposite = ViewUtils.getView(this, R.id.conversation_avatar_group_composite).asInstanceOf[ImageView]
 
   private val avatarSingle = ViewUtils.getView(this, R.id.avatar_single).asInstanceOf[ChatheadView]
   private val avatarGroup = ViewUtils.getView(this, R.id.avatar_group).asInstanceOf[View]
@@ -57,23 +54,25 @@ class ConversationAvatarView (context: Context, attrs: AttributeSet, style: Int)
 
   private val imageSources = Seq.fill(4)(Signal[ImageSource]())
 
-  private val chatheads = Seq(avatarStartTop, avatarEndTop, avatarStartBottom, avatarEndBottom)
+  // group avatar tiles are drawn into a single bitmap, shared by all rows showing the same members
+  private lazy val groupAvatars = inject[GroupAvatarCache]
+  private val groupMembers = Signal(Seq.empty[UserId])
+  private val compositeSize = getDimenPx(R.dimen.conversation_list__avatar__size) - 2 * getDimenPx(R.dimen.conversation_list__avatar__inner_margin)
+  private val tileSize = getDimenPx(R.dimen.conversation_list__avatar__small_size)
+
+  groupMembers.flatMap(groupAvatars(_, compositeSize, tileSize)).onUi { bitmap =>
+    avatarComposite.setImageBitmap(bitmap.orNull)
+  }
 
   def setMembers(members: Seq[UserId], convId: ConvId, conversationType: ConversationType): Unit = {
     conversationType match {
       case ConversationType.Group if members.size == 1 =>
-        chatheads.foreach(_.clearUser())
+        groupMembers ! Seq.empty
         avatarGroupSingle.setUserId(members.head)
       case ConversationType.Group =>
         val shuffledIds = ConversationAvatarView.shuffle(members.sortBy(_.str), convId)
         avatarGroupSingle.clearUser()
-        chatheads.map(Some(_)).zipAll(shuffledIds.take(4).map(Some(_)), None, None).foreach{
-          case (Some(view), Some(uid)) =>
-            view.setUserId(uid)
-          case (Some(view), None) =>
-            view.clearUser()
-          case _ =>
-        }
+        groupMembers ! shuffledIds.take(GroupAvatarCache.MaxTiles)
       case ConversationType.OneToOne | ConversationType.WaitForConnection if members.nonEmpty =>
         members.headOption.fold(avatarSingle.clearUser())(avatarSingle.setUserId)
       case _ =>
@@ -99,7 +98,7 @@ class ConversationAvatarView (context: Context, attrs: AttributeSet, style: Int)
   }
 
   def clearImages(): Unit ={
-    chatheads.foreach(_.clearUser())
+    groupMembers ! Seq.empty
     avatarSingle.clearUser()
   }
 }
@@ -122,21 +121,30 @@ object ConversationAvatarView {
     byteBuffer.array()
   }
 
+  /**
+    * Deterministic generator returning both uuid halves (read as unsigned little endian numbers) in turns.
+    * Works on primitive longs, `rand(max)` gives the same results as the unsigned 64 bit value modulo `max`.
+    */
   case class RandomGeneratorFromConvId(convId: ConvId) {
 
     private val uuid = UUID.fromString(convId.str)
 
-    private val leastBits = longToUnsignedLongLittleEndian(uuid.getLeastSignificantBits)
-    private val mostBits = longToUnsignedLongLittleEndian(uuid.getMostSignificantBits)
+    private val leastBits = java.lang.Long.reverseBytes(uuid.getLeastSignificantBits)
+    private val mostBits = java.lang.Long.reverseBytes(uuid.getMostSignificantBits)
 
     private var step = 0
 
-    def rand(max: Long): Long = {
-      val maxBig = BigInt(max)
-      (rand() mod maxBig).longValue()
-    }
+    def rand(max: Long): Long = unsignedRemainder(nextBits(), max)
 
     def rand(): BigInt = {
+      val value = BigInt(nextBits())
+      if (value.signum < 0) value + BigInt(BigInteger.ONE.shiftLeft(java.lang.Long.SIZE)) else value
+    }
+
+    /**
+      * Next value as raw bits, it should be interpreted as unsigned.
+      */
+    def nextBits(): Long = {
       val value =
         if (step % 2 == 0) {
           mostBits
@@ -148,10 +156,22 @@ object ConversationAvatarView {
     }
   }
 
+  /**
+    * Remainder of `dividend` interpreted as unsigned 64 bit number, `divisor` has to be positive.
+    * Long.remainderUnsigned is not available on older Android versions.
+    */
+  def unsignedRemainder(dividend: Long, divisor: Long): Long =
+    if (dividend >= 0) dividend % divisor
+    else {
+      val quotient = ((dividend >>> 1) / divisor) << 1
+      val rem = dividend - quotient * divisor
+      if ((rem ^ Long.MinValue) >= (divisor ^ Long.MinValue)) rem - divisor else rem
+    }
+
   def shuffle[T](seq: Seq[T], convId: ConvId): Seq[T] = {
     val generator = RandomGeneratorFromConvId(convId)
-    val input = new ArrayBuffer[T] ++= seq
-    val output = new ArrayBuffer[T]
+    val input = new ArrayBuffer[T](seq.size) ++= seq
+    val output = new ArrayBuffer[T](seq.size)
 
     seq.indices.foreach { _ =>
       val idx = generator.rand(input.size).toInt
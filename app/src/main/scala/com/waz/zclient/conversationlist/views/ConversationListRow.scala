@@ -46,7 +46,7 @@ import com.waz.zclient.ui.text.TypefaceTextView
 import com.waz.zclient.ui.utils.TextViewUtils
 import com.waz.zclient.ui.views.properties.MoveToAnimateable
 import com.waz.zclient.utils.ContextUtils._
-import com.waz.zclient.utils.{ConversationSignal, StringUtils, UiStorage, UserSetSignal, UserSignal, ViewUtils}
+import com.waz.zclient.utils.{StringUtils, ViewUtils}
 import com.waz.zclient.views.AvailabilityView
 import com.waz.zclient.{R, ViewHelper}
 
@@ -63,7 +63,6 @@ class NormalConversationListRow(context: Context, attrs: AttributeSet, style: In
   def this(context: Context) = this(context, null, 0)
 
   implicit val executionContext = Threading.Background
-  implicit val uiStorage = inject[UiStorage]
 
   inflate(R.layout.conv_list_item)
 
@@ -87,63 +86,11 @@ class NormalConversationListRow(context: Context, attrs: AttributeSet, style: In
   val menuIndicatorView = ViewUtils.getView(this, R.id.conversation_menu_indicator).asInstanceOf[MenuIndicatorView]
 
   var conversationData = Option.empty[ConversationData]
-  val conversation = for {
-    Some(convId) <- conversationId
-    conv <- ConversationSignal(convId)
-  } yield conv
-
-  val members = conversationId.collect { case Some(convId) => convId } flatMap controller.members
-
-  val conversationName = conversation map { conv =>
-    if (conv.displayName == "") {
-      // This hack was in the UiModule Conversation implementation
-      // XXX: this is a hack for some random errors, sometimes conv has empty name which is never updated
-      zms.head foreach {_.conversations.forceNameUpdate(conv.id) }
-    }
-    conv.displayName
-  }
 
-  val userTyping = for {
-    z <- zms
-    convId <- conversation.map(_.id)
-    typing <- Signal.wrap(z.typing.onTypingChanged.filter(_._1 == convId).map(_._2.headOption)).orElse(Signal.const(None))
-    typingUser <- userData(typing.map(_.id))
-  } yield typingUser
-
-  val badgeInfo = for {
-    z <- zms
-    conv <- conversation
-    typing <- userTyping.map(_.nonEmpty)
-    availableCalls <- z.calling.availableCalls
-  } yield (conv.id, badgeStatusForConversation(conv, conv.unreadCount.messages, typing, availableCalls))
-
-  val subtitleText = for {
-    z <- zms
-    conv <- conversation
-    lastMessage <- controller.lastMessage(conv.id)
-    lastUnreadMessage = lastMessage.filter(_.userId != z.selfUserId).filter(_ => conv.unreadCount.total > 0)
-    lastUnreadMessageUser <- lastUnreadMessage.fold2(Signal.const(Option.empty[UserData]), message => UserSignal(message.userId).map(Some(_)))
-    lastUnreadMessageMembers <- lastUnreadMessage.fold2(Signal.const(Vector[UserData]()), message => UserSetSignal(message.members).map(_.toVector))
-    typingUser <- userTyping
-    ms <- members
-    otherUser <- userData(ms.headOption)
-  } yield (conv.id, subtitleStringForLastMessages(conv, otherUser, ms.toSet, lastMessage, lastUnreadMessage, lastUnreadMessageUser, lastUnreadMessageMembers, typingUser, z.selfUserId))
-
-  private def userData(id: Option[UserId]) = id.fold2(Signal.const(Option.empty[UserData]), uid => UserSignal(uid).map(Option(_)))
-
-  val avatarInfo = for {
-    z <- zms
-    conv <- conversation
-    memberIds <- members
-    memberSeq <- Signal.sequence(memberIds.map(uid => UserSignal(uid)):_*)
-  } yield {
-    val opacity =
-      if ((memberIds.isEmpty && conv.convType == ConversationType.Group) || conv.convType == ConversationType.WaitForConnection || !conv.isActive)
-        getResourceFloat(R.dimen.conversation_avatar_alpha_inactive)
-      else
-        getResourceFloat(R.dimen.conversation_avatar_alpha_active)
-    (conv.id, conv.convType, memberSeq.filter(_.id != z.selfUserId), opacity)
-  }
+  // all row content is prepared by controller in background, row only binds ready models
+  val rowModel = conversationId.collect { case Some(convId) => convId } flatMap controller.rowModel
+
+  val avatarInfo = rowModel.map(m => (m.convId, m.avatarType, m.members))
 
   def setSubtitle(text: String): Unit = {
     if (text.nonEmpty) {
@@ -156,46 +103,21 @@ class NormalConversationListRow(context: Context, attrs: AttributeSet, style: In
     }
   }
 
-  (for {
-    name <- conversationName
-    Some(convId) <- conversationId
-    av <- controller.availability(convId)
-  } yield (name, av)).on(Threading.Ui) { case (name, av) =>
-    title.setText(name)
-    AvailabilityView.displayLeftOfText(title, av, title.getCurrentTextColor, pushDown = true)
-  }
-
-  subtitleText.on(Threading.Ui) {
-    case (convId, text) if conversationData.forall(_.id == convId) =>
-      setSubtitle(text)
-    case _ =>
-      verbose("Outdated conversation subtitle")
-    }
-
-  badgeInfo.on(Threading.Ui) {
-    case (convId, status) if conversationData.forall(_.id == convId) =>
-      badge.setStatus(status)
+  rowModel.on(Threading.Ui) {
+    case model if conversationData.forall(_.id == model.convId) =>
+      title.setText(model.title)
+      AvailabilityView.displayLeftOfText(title, model.availability, title.getCurrentTextColor, pushDown = true)
+      setSubtitle(model.subtitle)
+      badge.setStatus(model.badge)
+      avatar.setConversationType(model.avatarType)
+      avatar.setAlpha(model.opacity)
     case _ =>
-      verbose("Outdated badge status")
+      verbose("Outdated row model")
   }
 
-  avatarInfo.on(Threading.Background){
-    case (convId, convType, members, alpha) if conversationData.forall(_.id == convId) =>
-      val cType =
-      if (convType == ConversationType.Group && members.size == 1 && conversationData.exists(_.team.nonEmpty))
-        ConversationType.OneToOne
-      else
-        convType
-      avatar.setMembers(members.map(_.id), convId, cType)
-    case _ =>
-      verbose("Outdated avatar info")
-  }
-  avatarInfo.on(Threading.Ui){
-    case (convId, convType, members, alpha) if conversationData.forall(_.id == convId) =>
-      if (convType == ConversationType.Group && members.size == 1 && conversationData.exists(_.team.nonEmpty)) {
-        avatar.setConversationType(ConversationType.OneToOne)
-      }
-      avatar.setAlpha(alpha)
+  avatarInfo.on(Threading.Background) {
+    case (convId, convType, members) if conversationData.forall(_.id == convId) =>
+      avatar.setMembers(members, convId, convType)
     case _ =>
       verbose("Outdated avatar info")
   }
@@ -227,18 +149,22 @@ class NormalConversationListRow(context: Context, attrs: AttributeSet, style: In
     subtitle.setVisibility(View.GONE)
   }
 
-  def setConversation(conversationData: ConversationData): Unit = if (this.conversationData.forall(_.id != conversationData.id)) {
-    this.conversationData = Some(conversationData)
-    title.setText(conversationData.displayName)
-
-    badge.setStatus(ConversationBadge.Empty)
-    subtitle.setText("")
-    avatar.setConversationType(conversationData.convType)
-    avatar.clearImages()
-    avatar.setAlpha(getResourceFloat(R.dimen.conversation_avatar_alpha_active))
-    conversationId.publish(Some(conversationData.id), Threading.Background)
-    closeImmediate()
-  }
+  def setConversation(conversationData: ConversationData): Unit =
+    if (this.conversationData.exists(_.id == conversationData.id)) {
+      // same conversation re-bound with updated data, content itself is updated from row model
+      this.conversationData = Some(conversationData)
+    } else {
+      this.conversationData = Some(conversationData)
+      title.setText(conversationData.displayName)
+
+      badge.setStatus(ConversationBadge.Empty)
+      subtitle.setText("")
+      avatar.setConversationType(conversationData.convType)
+      avatar.clearImages()
+      avatar.setAlpha(getResourceFloat(R.dimen.conversation_avatar_alpha_active))
+      conversationId.publish(Some(conversationData.id), Threading.Background)
+      closeImmediate()
+    }
 
   menuIndicatorView.setClickable(false)
   menuIndicatorView.setMaxOffset(menuOpenOffset)
@@ -0,0 +1,157 @@
+/**
+ * Wire
+ * Copyright (C) 2018 Wire Swiss GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.waz.zclient.conversationlist.views
+
+import android.app.ActivityManager
+import android.content.Context
+import android.graphics._
+import android.util.LruCache
+import com.waz.api.impl.AccentColor
+import com.waz.model._
+import com.waz.service.ZMessaging
+import com.waz.service.assets.AssetService.BitmapResult
+import com.waz.service.assets.AssetService.BitmapResult.BitmapLoaded
+import com.waz.service.images.BitmapSignal
+import com.waz.ui.MemoryImageCache.BitmapRequest.Single
+import com.waz.utils.events.{EventContext, Signal}
+import com.waz.utils.{NameParts, returning}
+import com.waz.zclient.ui.utils.TypefaceUtils
+import com.waz.zclient.utils.ContextUtils._
+import com.waz.zclient.{Injectable, Injector, R}
+
+/**
+  * Renders 2x2 group conversation avatars into a single bitmap.
+  *
+  * Conversation list rows used to show four separate chatheads for every group, each of them loading and drawing
+  * its own bitmap. Here tiles are composited once and the result is cached by everything it depends on
+  * (ordered members, their pictures and colors, size), so it's only rendered again when one of those changes.
+  */
+class GroupAvatarCache(implicit inj: Injector, context: Context, ec: EventContext) extends Injectable {
+  import GroupAvatarCache._
+
+  private val zms = inject[Signal[ZMessaging]]
+
+  private val cache = new LruCache[AvatarKey, Bitmap](cacheSize(inject[ActivityManager].getMemoryClass)) {
+    override def sizeOf(key: AvatarKey, value: Bitmap): Int = value.getByteCount
+  }
+
+  private lazy val initialsTypeface  = TypefaceUtils.getTypeface(getString(R.string.chathead__user_initials__font))
+  private lazy val initialsFontColor = getColor(R.color.chathead__user_initials__font_color)
+  private lazy val grayScaleColor    = getColor(R.color.chathead__non_connected__color)
+  private lazy val emptyTileColor    = getColor(R.color.black_8)
+
+  /**
+    * @param members up to 4 members, in the order in which they should be drawn
+    * @param size size of the whole avatar in px
+    * @param tileSize size of a single member tile in px, tiles are aligned to avatar corners
+    */
+  def apply(members: Seq[UserId], size: Int, tileSize: Int): Signal[Option[Bitmap]] =
+    if (members.isEmpty || size <= 0) Signal.const(None)
+    else for {
+      z      <- zms
+      users  <- Signal.sequence(members.take(MaxTiles).map(z.usersStorage.signal): _*)
+      key    =  AvatarKey(users.map(Tile(_, z.teamId)), size, tileSize)
+      bitmap <- Option(cache.get(key)).fold(render(z, key))(b => Signal.const(Some(b)))
+    } yield bitmap
+
+  private def render(zms: ZMessaging, key: AvatarKey): Signal[Option[Bitmap]] =
+    Signal.sequence(key.tiles.map(t => tileBitmap(zms, t.picture, key.tileSize)): _*) map { results =>
+      val bitmaps = results.map {
+        case BitmapLoaded(bmp, _) if bmp != null => Some(bmp)
+        case _ => None
+      }
+      val bitmap = compose(key, bitmaps)
+      // avatars with missing pictures (still loading, or failed) are not cached, so next bind will try to load them again
+      if (key.tiles.zip(bitmaps).forall { case (tile, bmp) => tile.picture.isEmpty || bmp.isDefined }) cache.put(key, bitmap)
+      Some(bitmap)
+    }
+
+  private def tileBitmap(zms: ZMessaging, picture: Option[AssetId], size: Int): Signal[BitmapResult] = picture match {
+    case Some(id) => zms.assetsStorage.signal(id) flatMap {
+      case data @ AssetData.IsImage() => BitmapSignal(zms, data, Single(size))
+      case _ => Signal.const(BitmapResult.Empty)
+    }
+    case None => Signal.const(BitmapResult.Empty)
+  }
+
+  private def compose(key: AvatarKey, bitmaps: Seq[Option[Bitmap]]): Bitmap =
+    returning(Bitmap.createBitmap(key.size, key.size, Bitmap.Config.ARGB_8888)) { result =>
+      val canvas = new Canvas(result)
+      val paint = new Paint(Paint.ANTI_ALIAS_FLAG | Paint.FILTER_BITMAP_FLAG)
+      val textPaint = returning(new Paint(Paint.ANTI_ALIAS_FLAG)) { p =>
+        p.setTextAlign(Paint.Align.CENTER)
+        p.setTypeface(initialsTypeface)
+        p.setColor(initialsFontColor)
+        p.setTextSize(3f * key.tileSize / 8f)
+      }
+
+      val tiles = key.tiles.zip(bitmaps)
+
+      tileRects(key.size, key.tileSize).zipWithIndex foreach { case (rect, i) =>
+        tiles.lift(i) match {
+          case Some((tile, Some(bitmap))) =>
+            paint.setColorFilter(if (tile.grayScale) GrayScaleFilter else null)
+            paint.setAlpha(255)
+            canvas.drawBitmap(bitmap, null, rect, paint)
+          case Some((tile, None)) =>
+            paint.setColorFilter(null)
+            paint.setColor(if (tile.grayScale) grayScaleColor else tile.accent)
+            canvas.drawRect(rect, paint)
+            canvas.drawText(tile.initials, rect.centerX(), rect.centerY() - (textPaint.descent + textPaint.ascent) / 2f, textPaint)
+          case None =>
+            paint.setColorFilter(null)
+            paint.setColor(emptyTileColor)
+            canvas.drawRect(rect, paint)
+        }
+      }
+    }
+}
+
+object GroupAvatarCache {
+
+  val MaxTiles = 4
+
+  // part of app memory class used for composited avatars
+  val MemoryFraction = 32
+
+  def cacheSize(memoryClass: Int): Int = memoryClass * 1024 * 1024 / MemoryFraction
+
+  private lazy val GrayScaleFilter = new ColorMatrixColorFilter(returning(new ColorMatrix)(_.setSaturation(0)))
+
+  /**
+    * Only contains user properties which are actually drawn.
+    */
+  case class Tile(id: UserId, picture: Option[AssetId], accent: Int, initials: String, grayScale: Boolean)
+
+  object Tile {
+    def apply(user: UserData, teamId: Option[TeamId]): Tile = {
+      val teamMember = teamId.isDefined && teamId == user.teamId
+      Tile(user.id, user.picture, AccentColor(user.accent).getColor(), NameParts.parseFrom(user.name).initials, !(user.isConnected || user.isSelf || teamMember))
+    }
+  }
+
+  case class AvatarKey(tiles: Seq[Tile], size: Int, tileSize: Int)
+
+  /**
+    * Tile positions: start top, end top, start bottom, end bottom.
+    */
+  def tileRects(size: Int, tileSize: Int): Seq[RectF] = {
+    val end = (size - tileSize).toFloat
+    Seq((0f, 0f), (end, 0f), (0f, end), (end, end)) map { case (x, y) => new RectF(x, y, x + tileSize, y + tileSize) }
+  }
+}
@@ -25,8 +25,8 @@ import com.waz.model.AssetData
 import com.waz.service.assets.AssetService.BitmapResult
 import com.waz.ui.MemoryImageCache.BitmapRequest
 import com.waz.utils.events.{EventContext, Signal}
-import com.waz.zclient.common.views.ImageAssetDrawable
-import com.waz.zclient.common.views.ImageController.DataImage
+import com.waz.zclient.common.views.ImageController.{DataImage, ImageSource, NoImage}
+import com.waz.zclient.common.views.{ImageAssetDrawable, ImagePrefetcher}
 import com.waz.zclient.giphy.GiphyGridViewAdapter.{AssetLoader, ScrollGifCallback}
 import com.waz.zclient.giphy.GiphySharingPreviewFragment.GifData
 import com.waz.zclient.pages.main.conversation.views.AspectRatioImageView
@@ -37,6 +37,12 @@ object GiphyGridViewAdapter {
 
   type AssetLoader = (AssetData, BitmapRequest) => Signal[BitmapResult]
 
+  val Columns = 2
+
+  /**
+    * Every holder keeps a single drawable, binding only swaps its image source.
+    * Source is only subscribed while the cell is attached, so animated previews scrolled off screen stop decoding frames.
+    */
   class ViewHolder(view: View,
                    val assetLoader: AssetLoader,
                    val scrollGifCallback: GiphyGridViewAdapter.ScrollGifCallback)
@@ -45,30 +51,39 @@ object GiphyGridViewAdapter {
 
     private lazy val gifPreview = itemView.findViewById[AspectRatioImageView](R.id.iv__row_giphy_image)
 
-    def setImageAssets(image: AssetData, preview: Option[AssetData], position: Int): Unit = {
-      gifPreview.setOnClickListener(new View.OnClickListener() {
-        override def onClick(v: View): Unit = {
-          scrollGifCallback.setSelectedGifFromGridView(image)
-        }
-      })
+    private var image = Option.empty[AssetData]
+    private val imageSource = Signal[ImageSource](NoImage())
+    private val attached = Signal(false)
+    private val background = new ColorDrawable()
+
+    private lazy val imageDrawable = new ImageAssetDrawable(
+      attached.flatMap { if (_) imageSource else Signal.const[ImageSource](NoImage()) },
+      background = Some(background)
+    )
 
-      val colorArray = itemView.getContext.getResources.getIntArray(R.array.selectable_accents_color)
-      val defaultDrawable = new ColorDrawable(colorArray(position % (colorArray.length - 1)))
+    gifPreview.setOnClickListener(new View.OnClickListener() {
+      override def onClick(v: View): Unit = image.foreach(scrollGifCallback.setSelectedGifFromGridView)
+    })
+
+    def setImageAssets(image: AssetData, preview: Option[AssetData], color: Int): Unit = {
+      this.image = Some(image)
+      background.setColor(color)
 
       preview match {
-        case None => gifPreview.setImageDrawable(defaultDrawable)
+        case None =>
+          imageSource ! NoImage()
+          gifPreview.setImageDrawable(background)
         case Some(data) =>
-          val imageAssetDrawable = new ImageAssetDrawable(
-            Signal.const(DataImage(data)),
-            background = Some(defaultDrawable)
-          )
-          gifPreview.setImageDrawable(imageAssetDrawable)
+          imageSource ! DataImage(data)
+          gifPreview.setImageDrawable(imageDrawable)
           gifPreview.setAspectRatio(
             if (MathUtils.floatEqual(data.height, 0)) 1f
             else data.width.toFloat / data.height
           )
       }
     }
+
+    def setAttached(attached: Boolean): Unit = this.attached ! attached
   }
 
   trait ScrollGifCallback {
@@ -86,20 +101,57 @@ class GiphyGridViewAdapter(val scrollGifCallback: ScrollGifCallback,
 
   private var giphyResults = Seq.empty[GifData]
 
+  private var colors = Array.empty[Int]
+
+  private lazy val imagePrefetcher = new ImagePrefetcher()
+  private var cellWidth = 0
+  private var lastBound = 0
+
   override def onCreateViewHolder(parent: ViewGroup, viewType: Int): GiphyGridViewAdapter.ViewHolder = {
+    if (colors.isEmpty) colors = parent.getContext.getResources.getIntArray(R.array.selectable_accents_color)
     val rootView = ViewHelper.inflate[View](R.layout.row_giphy_image, parent, addToParent = false)
     new ViewHolder(rootView, assetLoader, scrollGifCallback)
   }
 
   override def onBindViewHolder(holder: GiphyGridViewAdapter.ViewHolder, position: Int): Unit = {
     val GifData(preview, image) = giphyResults(position)
-    holder.setImageAssets(image, preview, position)
+    holder.setImageAssets(image, preview, colors(position % (colors.length - 1)))
+
+    val direction = if (position >= lastBound) 1 else -1
+    lastBound = position
+    prefetchPreviews(position, direction)
+  }
+
+  override def onViewAttachedToWindow(holder: GiphyGridViewAdapter.ViewHolder): Unit = {
+    holder.setAttached(true)
+    if (holder.itemView.getWidth > 0) cellWidth = holder.itemView.getWidth
   }
 
+  override def onViewDetachedFromWindow(holder: GiphyGridViewAdapter.ViewHolder): Unit =
+    holder.setAttached(false)
+
   override def getItemCount: Int = giphyResults.size
 
   def setGiphyResults(giphyResults: Seq[GifData]): Unit = {
+    imagePrefetcher.cancel()
     this.giphyResults = giphyResults
+    lastBound = 0
     notifyDataSetChanged()
   }
+
+  /**
+    * Starts loading previews of the next rows, using the same request as the cell drawable, so they are cached when bound.
+    */
+  private def prefetchPreviews(position: Int, direction: Int): Unit =
+    if (cellWidth > 0) {
+      val lookahead = ImagePrefetcher.DefaultLookahead * Columns
+      val positions =
+        if (direction > 0) (position + 1) to math.min(getItemCount - 1, position + lookahead)
+        else (position - 1) to math.max(0, position - lookahead) by -1
+
+      val requests = positions.flatMap(giphyResults(_).preview) map { data =>
+        ImagePrefetcher.Request(DataImage(data), BitmapRequest.Regular(cellWidth), forceDownload = true)
+      }
+      imagePrefetcher.prefetch(requests, direction)
+    }
 }
@@ -171,7 +171,7 @@ class GiphySharingPreviewFragment extends BaseFragment[GiphySharingPreviewFragme
     errorView.foreach(_.setVisibility(View.GONE))
 
     recyclerView.foreach { v =>
-      v.setLayoutManager(new StaggeredGridLayoutManager(2, StaggeredGridLayoutManager.VERTICAL))
+      v.setLayoutManager(new StaggeredGridLayoutManager(GiphyGridViewAdapter.Columns, StaggeredGridLayoutManager.VERTICAL))
       v.setAdapter(giphyGridViewAdapter)
     }
 
@@ -21,12 +21,15 @@ import com.waz.ZLog._
 import com.waz.ZLog.ImplicitTag._
 import com.waz.content.MessagesCursor
 import com.waz.content.MessagesCursor.Entry
-import com.waz.model.MessageData
+import com.waz.model.{MessageData, MessageId}
+import com.waz.threading.Threading
 import com.waz.zclient.messages.RecyclerCursor.RecyclerNotifier
+import com.waz.zclient.utils.ListDiff
 import com.waz.utils._
 
 import scala.collection.Searching.Found
-import scala.collection.mutable.ArrayBuffer
+import scala.concurrent.Future
+import scala.util.control.NonFatal
 
 /**
   * Index maintaining message indices for currently displayed messages.
@@ -37,36 +40,104 @@ import scala.collection.mutable.ArrayBuffer
   *
   * RecyclerView only cares about notifications for visible elements, so it's enough to
   * keep a small window around current position, and ignore changes outside of it.
+  *
+  * MessagesCursor is not thread safe, every read goes through `read`, so background window loads never
+  * overlap with UI thread reads. Background loads read in small chunks, UI thread only waits for one chunk at most.
   */
-class IndexWindow(cursor: RecyclerCursor, notifier: RecyclerNotifier, size: Int = 100) {
+class IndexWindow(cursor: RecyclerCursor, notifier: RecyclerNotifier, size: Int = 100, maxSize: Int = 100) {
   import IndexWindow._
-
-  private val ord = implicitly[Ordering[Entry]]
+  import Threading.Implicits.Ui
 
   private var data = IndexedSeq.empty[Entry]
   private var totalCount = 0
 
   private var offset = 0
 
-  def shouldReload(position: Int): Boolean = offset > math.max(0, position - 25) || offset + data.length < math.min(cursor.count, position + 25)
+  // incremented on every data change, windows prefetched for older generation are outdated and have to be dropped
+  private var generation = 0
+  private var prefetched = Option.empty[Prefetched]
+  private var loading = Option.empty[Future[Unit]]
+
+  private val lock = new Object
+
+  def read[A](body: => A): A = lock.synchronized(body)
+
+  def shouldReload(position: Int): Boolean = offset > math.max(0, position - ReloadMargin) || offset + data.length < math.min(cursor.count, position + ReloadMargin)
 
   // moves window to specified position, this doesn't generate any notifications, as underlying data didn't really change
   def reload(c: MessagesCursor, position: Int): Unit = {
-    offset = math.max(0, position - 50)
-    data = c.getEntries(offset, math.min(cursor.count - offset, 100)).toIndexedSeq
-    val size = c.size
-    if (size != totalCount) {
-      totalCount = size
+    prefetched.filter(p => p.generation == generation && p.covers(position, cursor.count)) match {
+      case Some(p) =>
+        verbose(s"using prefetched window at offset: ${p.offset}, size: ${p.entries.size}")
+        offset = p.offset
+        data = p.entries
+      case None =>
+        offset = math.max(0, position - size / 2)
+        data = read(c.getEntries(offset, math.min(cursor.count - offset, size))).toIndexedSeq
+    }
+    prefetched = None
+
+    val count = read(c.size)
+    if (count != totalCount) {
+      totalCount = count
       error("MessagesCursor size has changed unexpectedly, will notify data set change.")
       notifier.notifyDataSetChanged()
     }
   }
 
+  /**
+    * Loads next window in background if current scroll position gets close to the window edge.
+    * Velocity is in items per second, positive when scrolling towards the end of the list.
+    * Faster scroll loads bigger window further ahead, limited by `maxSize`.
+    */
+  def prefetch(c: MessagesCursor, position: Int, velocity: Float): Unit = {
+    val forward = velocity >= 0
+    val lookahead = ReloadMargin + math.min((math.abs(velocity) * LookaheadTime).toInt, maxSize / 2)
+    val needed =
+      if (forward) offset + data.length < math.min(cursor.count, position + lookahead)
+      else offset > math.max(0, position - lookahead)
+
+    if (needed && loading.isEmpty && !prefetched.exists(p => p.generation == generation && p.covers(position + (if (forward) lookahead else -lookahead), cursor.count))) {
+      val windowSize = math.max(size, math.min(maxSize, lookahead * 4))
+      val start = if (forward) position - windowSize / 4 else position - windowSize * 3 / 4
+      load(c, start, windowSize)
+    }
+  }
+
+  /**
+    * Loads window centered at given position in background, completes once loaded window is ready to be used by `reload`.
+    * Used when jumping to distant position, so the jump itself doesn't block UI on loading.
+    * Unlike scroll prefetch, this is never skipped, it's started once currently running load completes.
+    */
+  def prefetchAt(c: MessagesCursor, position: Int): Future[Unit] =
+    loading.getOrElse(Future.successful(())) flatMap { _ => load(c, position - size / 2, size) }
+
+  private def load(c: MessagesCursor, start: Int, windowSize: Int): Future[Unit] = {
+    val count = cursor.count
+    val off = math.max(0, math.min(start, count - windowSize))
+    val len = math.min(count - off, windowSize)
+    val gen = generation
+    verbose(s"prefetching window at offset: $off, size: $len")
+    val f = Future(readEntries(c, off, len))(Threading.Background).map { entries =>
+      if (gen == generation) prefetched = Some(Prefetched(off, entries, gen))
+    } recover { case NonFatal(e) =>
+      warn("window prefetch failed", e)
+    }
+    loading = Some(f)
+    f.onComplete { _ => if (loading.contains(f)) loading = None }
+    f
+  }
+
+  private def readEntries(c: MessagesCursor, off: Int, len: Int): IndexedSeq[Entry] =
+    (off until off + len by LoadChunk).flatMap { start => read(c.getEntries(start, math.min(LoadChunk, off + len - start))) }
+
   private def search(e: Entry) = data.binarySearch(e, identity)
 
   def clear() = {
     offset = 0
     data = IndexedSeq.empty
+    generation += 1
+    prefetched = None
     notifier.notifyDataSetChanged()
   }
 
@@ -82,105 +153,61 @@ class IndexWindow(cursor: RecyclerCursor, notifier: RecyclerNotifier, size: Int
   /**
     * Reloads index and notifies recycler about data changes.
     * This is called when cursor is reloaded due to some data change.
-    * We need to compare old index with new data to find out if any messages were added or removed.
-    * Most of the time our cursor will have only small change (one addition or removal), we don't try to be exact here,
-    * RecyclerView expects to receive just one notification anyway, so we will fall back to generic notifyItemRangeChanged
-    * in case of more complicated changes, will notify with range encompassing all changes.
+    * We compare old index with new data to find out exactly which messages were added, removed or moved,
+    * and report all of those changes to the recycler as a batch of minimal notifications.
     *
     * We also track total count of messages to detect any additions or removals outside of current window.
-    * Will report full data set change if deduced changes doen't add up with total count, this is needed to avoid inconsistencies in recycler view.
-    *
-    * XXX: This doesn't work well when message is moved, it will just update all messages in range of move.
-    * We might want to improve that, although we rarely move messages, only in case of race conditions,
-    * there is no intended use case for moving of message.
+    * Will report full data set change if deduced changes don't add up with total count, this is needed to avoid inconsistencies in recycler view.
     */
   def cursorChanged(c: MessagesCursor) = {
-    val items = if (cursor.count > 0) c.getEntries(offset, math.min(cursor.count - offset, 100)).toIndexedSeq else IndexedSeq.empty
+    val items = if (cursor.count > 0) read(c.getEntries(offset, math.min(cursor.count - offset, math.max(size, data.length)))).toIndexedSeq else IndexedSeq.empty
     val prevCount = totalCount
-    val change = diff(data, items).result
+    generation += 1
+    prefetched = None
+    val changes = diff(data.toArray, items.toArray)
     data = items
-    totalCount = c.size
-    val count = math.min(change.count, cursor.count - offset - change.index)
-    if (count > 5 && count > items.size / 2) {
+    totalCount = read(c.size)
+    if (changes.count > 5 && changes.count > items.size / 2) {
       // revert to reporting full data set change if detected change is big (most of the items, excluding small windows)
       notifier.notifyDataSetChanged()
-    } else change match {
-      case Change.None if prevCount == totalCount => // nothing really changed
-      case Change.Added(index, _) if prevCount + count == totalCount =>
-        notifier.notifyItemRangeInserted(offset + index, count)
-      case Change.Removed(index, _) if prevCount - count == totalCount =>
-        notifier.notifyItemRangeRemoved(offset + index, count)
-      case Change.Changed(index, _) if prevCount == totalCount =>
-        notifier.notifyItemRangeChanged(offset + index, count)
+    } else if (prevCount + changes.inserted - changes.removed != totalCount) {
+      // report full data set change if detected change doesn't add up with total count
+      notifier.notifyDataSetChanged()
+    } else changes foreach {
+      case (Op.Insert, index, count) => notifier.notifyItemRangeInserted(offset + index, count)
+      case (Op.Remove, index, count) => notifier.notifyItemRangeRemoved(offset + index, count)
+      case (Op.Move, from, to)       => notifier.notifyItemMoved(offset + from, offset + to)
       case _ =>
-        // report full data set change if detected change doesn't add up with total count
-        notifier.notifyDataSetChanged()
     }
   }
-
-  private def diff(from: Seq[Entry], to: Seq[Entry], index: Int = 0, builder: ChangeBuilder = new ChangeBuilder): ChangeBuilder = (from.headOption, to.headOption) match {
-    case (None, None)                           => builder
-    case (Some(_), None)                        => builder.remove(index, from)
-    case (None, Some(_))                        => builder.add(index, to)
-    case (Some(fh), Some(th)) if fh.id == th.id => diff(from.tail, to.tail, index + 1, builder)
-    case (Some(fh), Some(th)) if ord.gt(fh, th) => diff(from, to.tail, index + 1, builder.add(index, th))
-    case (Some(fh), Some(_))                    => diff(from.tail, to, index, builder.remove(index, fh))
-  }
 }
 
 object IndexWindow {
 
-  sealed trait Change {
-    val index: Int
-    val count: Int
-  }
-  object Change {
-    case class Added(index: Int, count: Int) extends Change
-    case class Removed(index: Int, count: Int) extends Change
-    case class Changed(index: Int, count: Int) extends Change
-    case object None extends Change {
-      val index = 0
-      val count = 0
-    }
-  }
-
-  class ChangeBuilder() {
-    import Change._
-    val diffs = new ArrayBuffer[Change]
+  val ReloadMargin = 25
+  val LookaheadTime = 0.5f // seconds
+  val LoadChunk = 50
 
-    private def add(index: Int, count: Int): ChangeBuilder = diffs.lastOption match {
-      case Some(Added(idx, c)) if index == idx + c + 1 =>
-        diffs.update(diffs.size - 1, Added(idx, c + count))
-        this
-      case _ =>
-        diffs += Added(index, count)
-        this
-    }
-
-    private def remove(index: Int, count: Int): ChangeBuilder = diffs.lastOption match {
-      case Some(Removed(idx, c)) if index == idx =>
-        diffs.update(diffs.size - 1, Removed(idx, count + c))
-        this
-      case _ =>
-        diffs += Removed(index, count)
-        this
-    }
-
-    def add(index: Int, item: Entry): ChangeBuilder = add(index, 1)
-
-    def add(index: Int, items: Seq[Entry]): ChangeBuilder = add(index, items.size)
+  /**
+    * Window size limit derived from memory class, devices with more memory can keep bigger windows when flinging.
+    */
+  def maxWindowSize(memoryClass: Int) =
+    if (memoryClass <= 64) 100
+    else if (memoryClass <= 128) 200
+    else 300
+
+  case class Prefetched(offset: Int, entries: IndexedSeq[Entry], generation: Int) {
+    def covers(position: Int, count: Int) =
+      offset <= math.max(0, position - ReloadMargin) && offset + entries.length >= math.min(count, position + ReloadMargin)
+  }
 
-    def remove(index: Int, item: Entry): ChangeBuilder = remove(index, 1)
+  val Op = ListDiff.Op
 
-    def remove(index: Int, items: Seq[Entry]): ChangeBuilder = remove(index, items.size)
+  type Changes = ListDiff.Changes
 
-    def result =
-      if (diffs.isEmpty) Change.None
-      else if (diffs.size == 1) diffs.head
-      else {
-        val head = diffs.head
-        val last = diffs.last
-        Changed(head.index, last.index + last.count - head.index)
-      }
-  }
+  /**
+    * Computes changes needed to transform `from` window into `to` window, both are sorted by entries ordering.
+    * Entries are matched by message id, content changes are not reported as message views observe their messages on their own.
+    */
+  def diff(from: Array[Entry], to: Array[Entry]): Changes = ListDiff[Entry, MessageId](from, to)(_.id)
 }
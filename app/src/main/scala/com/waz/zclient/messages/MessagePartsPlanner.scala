@@ -0,0 +1,221 @@
+/**
+ * Wire
+ * Copyright (C) 2018 Wire Swiss GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.waz.zclient.messages
+
+import android.util.LruCache
+import com.waz.ZLog.ImplicitTag._
+import com.waz.ZLog._
+import com.waz.api.Message
+import com.waz.model._
+import com.waz.service.messages.MessageAndLikes
+import com.waz.threading.Threading
+import com.waz.utils.RichOption
+import com.waz.zclient.common.controllers.AssetsController
+import com.waz.zclient.conversation.ConversationController
+import com.waz.zclient.messages.MessageView.{MsgBindOptions, getMarginsDp}
+import com.waz.zclient.messages.MessageViewLayout.PartDesc
+import com.waz.zclient.messages.MsgPart._
+import com.waz.zclient.utils.DateConvertUtils.asZonedDateTime
+import com.waz.zclient.{BuildConfig, Injectable, Injector}
+import org.threeten.bp.Instant
+
+import scala.concurrent.Future
+
+/**
+  * Computes which parts (separators, chathead, content, footer...) should be displayed in a message view.
+  *
+  * Plans are immutable and cached, so that list adapter can prepare them on background thread
+  * for messages which are about to be bound, MessageView then only needs to apply ready plan.
+  */
+class MessagePartsPlanner(implicit inj: Injector) extends Injectable {
+  import MessagePartsPlanner._
+
+  private lazy val selection        = inject[ConversationController].messages
+  private lazy val assetsController = inject[AssetsController]
+
+  // android LruCache is synchronized, so it's safe to use it from both ui and background threads
+  private val plans = new LruCache[PlanKey, PartsPlan](PlanCacheSize)
+
+  def downloadsAlwaysEnabled = assetsController.downloadsAlwaysEnabled.currentValue.contains(true)
+
+  def shouldShowFooter(mAndL: MessageAndLikes, opts: MsgBindOptions): Boolean =
+    mAndL.likes.nonEmpty ||
+      selection.isFocused(mAndL.message.id) ||
+      (opts.isLastSelf && !opts.isGroup) ||
+      mAndL.message.state == Message.Status.FAILED || mAndL.message.state == Message.Status.FAILED_READ
+
+  def plan(msg: MessageData, prev: Option[MessageData], next: Option[MessageData], opts: MsgBindOptions, withFooter: Boolean): PartsPlan = {
+    val key = PlanKey(msg, prev, next, opts, withFooter, downloadsAlwaysEnabled)
+    Option(plans.get(key)).getOrElse {
+      val p = computePlan(msg, prev, next, opts, withFooter, key.downloadsEnabled)
+      plans.put(key, p)
+      p
+    }
+  }
+
+  /**
+    * Computes plans for messages which will (most likely) be bound soon.
+    * Footer visibility is resolved here the same way MessageView does it for messages which are not animating.
+    */
+  def prefetch(requests: Seq[PlanRequest]): Future[Seq[(PlanRequest, PartsPlan)]] =
+    if (requests.isEmpty) Future.successful(Nil)
+    else Future {
+      requests map { case req @ PlanRequest(mAndL, prev, next, opts) =>
+        req -> plan(mAndL.message, prev, next, opts, shouldShowFooter(mAndL, opts))
+      }
+    } (Threading.Background)
+
+  def clear(): Unit = {
+    verbose("clearing cached part plans")
+    plans.evictAll()
+  }
+}
+
+object MessagePartsPlanner {
+
+  val PlanCacheSize = 200
+
+  case class PlanRequest(msg: MessageAndLikes, prev: Option[MessageData], next: Option[MessageData], opts: MsgBindOptions)
+
+  /**
+    * Ready to apply description of message view, margins are in dp.
+    */
+  case class PartsPlan(parts: Seq[PartDesc], topMargin: Int, bottomMargin: Int)
+
+  val EmptyPlan = PartsPlan(Nil, 0, 0)
+
+  /**
+    * Only contains properties which are actually used when computing a plan.
+    * Message content is only relevant for rich media messages, as other part descriptors don't carry any content.
+    */
+  case class PlanKey(id:               MessageId,
+                     editTime:         Instant,
+                     time:             Instant,
+                     msgType:          Message.Type,
+                     content:          Seq[MessageContent],
+                     firstMemberJoin:  Option[(Boolean, Boolean)], // (has name, has members)
+                     prev:             Option[(MessageId, Instant, Message.Type)],
+                     next:             Option[(MessageId, Message.Type)],
+                     isFirstUnread:    Boolean,
+                     isGroup:          Boolean,
+                     canHaveLink:      Boolean,
+                     withFooter:       Boolean,
+                     downloadsEnabled: Boolean)
+
+  object PlanKey {
+    def apply(msg: MessageData, prev: Option[MessageData], next: Option[MessageData], opts: MsgBindOptions, withFooter: Boolean, downloadsEnabled: Boolean): PlanKey =
+      PlanKey(
+        msg.id,
+        msg.editTime,
+        msg.time,
+        msg.msgType,
+        if (msg.msgType == Message.Type.RICH_MEDIA) msg.content else Nil,
+        if (msg.msgType == Message.Type.MEMBER_JOIN && msg.firstMessage) Some((msg.name.nonEmpty, msg.members.nonEmpty)) else None,
+        prev.map(p => (p.id, p.time, p.msgType)),
+        next.map(n => (n.id, n.msgType)),
+        opts.isFirstUnread,
+        opts.isGroup,
+        opts.canHaveLink,
+        withFooter,
+        downloadsEnabled
+      )
+  }
+
+  def computePlan(msg: MessageData, prev: Option[MessageData], next: Option[MessageData], opts: MsgBindOptions, withFooter: Boolean, downloadsEnabled: Boolean): PartsPlan = {
+    import opts._
+    val isOneToOne = !isGroup
+
+    val contentParts = {
+      if (msg.msgType == Message.Type.MEMBER_JOIN && msg.firstMessage) {
+        (if (msg.name.nonEmpty) Seq(PartDesc(ConversationStart)) else Seq.empty) ++
+          (if (msg.members.nonEmpty) Seq(PartDesc(MemberChange)) else Seq.empty) ++
+          (if (canHaveLink) Seq(PartDesc(WirelessLink)) else Seq.empty)
+      }
+      else if (msg.msgType == Message.Type.RICH_MEDIA){
+        if (msg.content.size > 1){
+          Seq(PartDesc(MsgPart(Message.Type.TEXT, isOneToOne))) ++ (msg.content map { content => PartDesc(MsgPart(content.tpe), Some(content)) }).filter(_.tpe == WebLink)
+        } else {
+          msg.content map { content => PartDesc(MsgPart(content.tpe), Some(content)) }
+        }
+      }
+      else
+        Seq(PartDesc(MsgPart(msg.msgType, isOneToOne)))
+    } .filter(_.tpe != MsgPart.Empty)
+
+    val parts =
+      if (!BuildConfig.DEBUG && msg.msgType != Message.Type.RECALLED && contentParts.forall(_.tpe == MsgPart.Unknown)) Nil // don't display anything for unknown message
+      else {
+        val builder = Seq.newBuilder[PartDesc]
+
+        getSeparatorType(msg, prev, isFirstUnread).foreach(sep => builder += PartDesc(sep))
+
+        if (shouldShowChathead(msg, prev))
+          builder += PartDesc(MsgPart.User)
+
+        builder ++= contentParts
+
+        if (msg.isEphemeral) {
+          builder += PartDesc(MsgPart.EphemeralDots)
+        }
+
+        if (msg.msgType == Message.Type.ASSET && !downloadsEnabled)
+          builder += PartDesc(MsgPart.WifiWarning)
+
+        if (withFooter)
+          builder += PartDesc(MsgPart.Footer)
+
+        builder.result()
+      }
+
+    if (parts.isEmpty) EmptyPlan
+    else {
+      val (top, bottom) = getMarginsDp(prev.map(_.msgType), next.map(_.msgType), parts.head.tpe, parts.last.tpe, isOneToOne)
+      PartsPlan(parts, top, bottom)
+    }
+  }
+
+  private def getSeparatorType(msg: MessageData, prev: Option[MessageData], isFirstUnread: Boolean): Option[MsgPart] = msg.msgType match {
+    case Message.Type.CONNECT_REQUEST => None
+    case _ =>
+      prev.fold2(None, { p =>
+        val prevDay = asZonedDateTime(p.time).toLocalDate.atStartOfDay()
+        val curDay = asZonedDateTime(msg.time).toLocalDate.atStartOfDay()
+
+        if (prevDay.isBefore(curDay)) Some(SeparatorLarge)
+        else if (p.time.isBefore(msg.time.minusSeconds(1800)) || isFirstUnread) Some(Separator)
+        else None
+      })
+  }
+
+  private def systemMessage(m: MessageData) = {
+    import Message.Type._
+    m.isSystemMessage || (m.msgType match {
+      case OTR_DEVICE_ADDED | OTR_UNVERIFIED | OTR_VERIFIED | STARTED_USING_DEVICE | OTR_MEMBER_ADDED => true
+      case _ => false
+    })
+  }
+
+  private def shouldShowChathead(msg: MessageData, prev: Option[MessageData]) = {
+    val userChanged = prev.forall(m => m.userId != msg.userId || systemMessage(m))
+    val recalled = msg.msgType == Message.Type.RECALLED
+    val edited = msg.editTime != Instant.EPOCH
+    val knock = msg.msgType == Message.Type.KNOCK
+
+    !knock && !systemMessage(msg) && (recalled || edited || userChanged)
+  }
+}
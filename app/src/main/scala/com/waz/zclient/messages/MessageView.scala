@@ -24,18 +24,13 @@ import com.waz.ZLog.ImplicitTag._
 import com.waz.api.Message
 import com.waz.model._
 import com.waz.service.messages.MessageAndLikes
-import com.waz.utils.RichOption
-import com.waz.zclient.common.controllers.AssetsController
 import com.waz.zclient.conversation.ConversationController
-import com.waz.zclient.messages.MessageViewLayout.PartDesc
 import com.waz.zclient.messages.MsgPart._
 import com.waz.zclient.messages.controllers.MessageActionsController
 import com.waz.zclient.messages.parts.footer.FooterPartView
 import com.waz.zclient.utils.ContextUtils._
-import com.waz.zclient.utils.DateConvertUtils.asZonedDateTime
 import com.waz.zclient.utils._
-import com.waz.zclient.{BuildConfig, R, ViewHelper}
-import org.threeten.bp.Instant
+import com.waz.zclient.{R, ViewHelper}
 
 class MessageView(context: Context, attrs: AttributeSet, style: Int)
     extends MessageViewLayout(context, attrs, style) with ViewHelper {
@@ -48,7 +43,7 @@ class MessageView(context: Context, attrs: AttributeSet, style: Int)
   protected val factory = inject[MessageViewFactory]
   private val selection = inject[ConversationController].messages
   private lazy val messageActions = inject[MessageActionsController]
-  private lazy val assetsController = inject[AssetsController]
+  private lazy val planner = inject[MessagePartsPlanner]
 
   private var msgId: MessageId = _
   private var msg: MessageData = MessageData.Empty
@@ -78,54 +73,11 @@ class MessageView(context: Context, attrs: AttributeSet, style: Int)
     msg = mAndL.message
     msgId = msg.id
 
-    import opts._
-    val isOneToOne = !isGroup
+    // plan is usually already computed on background thread by list adapter, so this is just a cache lookup
+    val plan = planner.plan(msg, prev, next, opts, hasFooter || animateFooter)
 
-    val contentParts = {
-      if (msg.msgType == Message.Type.MEMBER_JOIN && msg.firstMessage) {
-        (if (msg.name.nonEmpty) Seq(PartDesc(ConversationStart)) else Seq.empty) ++
-          (if (msg.members.nonEmpty) Seq(PartDesc(MemberChange)) else Seq.empty) ++
-          (if (canHaveLink) Seq(PartDesc(WirelessLink)) else Seq.empty)
-      }
-      else if (msg.msgType == Message.Type.RICH_MEDIA){
-        if (msg.content.size > 1){
-          Seq(PartDesc(MsgPart(Message.Type.TEXT, isOneToOne))) ++ (msg.content map { content => PartDesc(MsgPart(content.tpe), Some(content)) }).filter(_.tpe == WebLink)
-        } else {
-          msg.content map { content => PartDesc(MsgPart(content.tpe), Some(content)) }
-        }
-      }
-      else
-        Seq(PartDesc(MsgPart(msg.msgType, isOneToOne)))
-    } .filter(_.tpe != MsgPart.Empty)
-
-    val parts =
-      if (!BuildConfig.DEBUG && msg.msgType != Message.Type.RECALLED && contentParts.forall(_.tpe == MsgPart.Unknown)) Nil // don't display anything for unknown message
-      else {
-        val builder = Seq.newBuilder[PartDesc]
-
-        getSeparatorType(msg, prev, isFirstUnread).foreach(sep => builder += PartDesc(sep))
-
-        if (shouldShowChathead(msg, prev))
-          builder += PartDesc(MsgPart.User)
-
-        builder ++= contentParts
-
-        if (msg.isEphemeral) {
-          builder += PartDesc(MsgPart.EphemeralDots)
-        }
-
-        if (msg.msgType == Message.Type.ASSET && !areDownloadsAlwaysEnabled)
-          builder += PartDesc(MsgPart.WifiWarning)
-
-        if (hasFooter || animateFooter)
-          builder += PartDesc(MsgPart.Footer)
-
-        builder.result()
-      }
-
-    val (top, bottom) = if (parts.isEmpty) (0, 0) else getMargins(prev.map(_.msgType), next.map(_.msgType), parts.head.tpe, parts.last.tpe, isOneToOne)
-    setPadding(0, top, 0, bottom)
-    setParts(mAndL, parts, opts)
+    setPadding(0, toPx(plan.topMargin), 0, toPx(plan.bottomMargin))
+    setParts(mAndL, plan.parts, opts)
 
     if (animateFooter)
       getFooter foreach { footer =>
@@ -134,48 +86,14 @@ class MessageView(context: Context, attrs: AttributeSet, style: Int)
       }
   }
 
-  def areDownloadsAlwaysEnabled = assetsController.downloadsAlwaysEnabled.currentValue.contains(true)
+  def areDownloadsAlwaysEnabled = planner.downloadsAlwaysEnabled
 
   def isFooterHiding = !hasFooter && getFooter.isDefined
 
   def isEphemeral = msg.isEphemeral
 
-  private def getSeparatorType(msg: MessageData, prev: Option[MessageData], isFirstUnread: Boolean): Option[MsgPart] = msg.msgType match {
-    case Message.Type.CONNECT_REQUEST => None
-    case _ =>
-      prev.fold2(None, { p =>
-        val prevDay = asZonedDateTime(p.time).toLocalDate.atStartOfDay()
-        val curDay = asZonedDateTime(msg.time).toLocalDate.atStartOfDay()
-
-        if (prevDay.isBefore(curDay)) Some(SeparatorLarge)
-        else if (p.time.isBefore(msg.time.minusSeconds(1800)) || isFirstUnread) Some(Separator)
-        else None
-      })
-  }
-
-  private def systemMessage(m: MessageData) = {
-    import Message.Type._
-    m.isSystemMessage || (m.msgType match {
-      case OTR_DEVICE_ADDED | OTR_UNVERIFIED | OTR_VERIFIED | STARTED_USING_DEVICE | OTR_MEMBER_ADDED => true
-      case _ => false
-    })
-  }
-
-  private def shouldShowChathead(msg: MessageData, prev: Option[MessageData]) = {
-    val userChanged = prev.forall(m => m.userId != msg.userId || systemMessage(m))
-    val recalled = msg.msgType == Message.Type.RECALLED
-    val edited = msg.editTime != Instant.EPOCH
-    val knock = msg.msgType == Message.Type.KNOCK
-
-    !knock && !systemMessage(msg) && (recalled || edited || userChanged)
-  }
-
-  private def shouldShowFooter(mAndL: MessageAndLikes, opts: MsgBindOptions): Boolean = {
-    mAndL.likes.nonEmpty ||
-      selection.isFocused(mAndL.message.id) ||
-      (opts.isLastSelf && !opts.isGroup) ||
-      mAndL.message.state == Message.Status.FAILED || mAndL.message.state == Message.Status.FAILED_READ
-  }
+  private def shouldShowFooter(mAndL: MessageAndLikes, opts: MsgBindOptions): Boolean =
+    planner.shouldShowFooter(mAndL, opts)
 
   def getFooter = listParts.lastOption.collect { case footer: FooterPartView => footer }
 }
@@ -249,6 +167,11 @@ object MessageView {
   }
 
   def getMargins(prevTpe: Option[Message.Type], nextTpe: Option[Message.Type], topPart: MsgPart, bottomPart: MsgPart, isOneToOne: Boolean)(implicit context: Context): (Int, Int) = {
+    val (top, bottom) = getMarginsDp(prevTpe, nextTpe, topPart, bottomPart, isOneToOne)
+    (toPx(top), toPx(bottom))
+  }
+
+  def getMarginsDp(prevTpe: Option[Message.Type], nextTpe: Option[Message.Type], topPart: MsgPart, bottomPart: MsgPart, isOneToOne: Boolean): (Int, Int) = {
     val top =
       if (prevTpe.isEmpty)
         MarginRule(topPart) match {
@@ -280,7 +203,7 @@ object MessageView {
         }
       else 0
 
-    (toPx(top), toPx(bottom))
+    (top, bottom)
   }
 
   // Message properties calculated while binding, may not be directly related to message state,
@@ -17,15 +17,24 @@
  */
 package com.waz.zclient.messages
 
+import android.os.{Looper, MessageQueue}
 import android.view.{View, ViewGroup}
 import android.widget.LinearLayout
 import com.waz.ZLog.ImplicitTag._
 import com.waz.ZLog.verbose
+import com.waz.threading.Threading
 import com.waz.zclient.{R, ViewHelper}
 
 import scala.collection.mutable
 
+/**
+  * Pool of message part views, shared by all message views in current activity.
+  *
+  * Pools are bounded per part type (and per layout resource), views recycled over the limit are dropped.
+  * Missing views can be inflated up front, when UI thread is idle, using `prewarm`.
+  */
 class MessageViewFactory {
+  import MessageViewFactory._
 
   val DefaultLayoutParams = new LinearLayout.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.WRAP_CONTENT)
 
@@ -33,51 +42,129 @@ class MessageViewFactory {
 
   private val viewCache = new mutable.HashMap[Int, mutable.Stack[View]]
 
+  private var hits = 0
+  private var misses = 0
+  private var evictions = 0
+
+  private var prewarmTarget = Map.empty[MsgPart, Int]
+  private var prewarmParent = Option.empty[ViewGroup]
+
+  private lazy val prewarmHandler = new MessageQueue.IdleHandler {
+    override def queueIdle(): Boolean = prewarmNext()
+  }
+
+  def stats = PoolStats(hits, misses, evictions, cache.valuesIterator.map(_.size).sum + viewCache.valuesIterator.map(_.size).sum)
+
   def recycle(part: MessageViewPart): Unit = {
     verbose(s"recycling part: ${part.tpe}")
-    cache.getOrElseUpdate(part.tpe, new mutable.Stack[MessageViewPart]()).push(part)
+    val pool = cache.getOrElseUpdate(part.tpe, new mutable.Stack[MessageViewPart]())
+    if (pool.size < capacity(part.tpe)) pool.push(part)
+    else evictions += 1
+  }
+
+  def get(tpe: MsgPart, parent: ViewGroup): MessageViewPart =
+    cache.get(tpe).flatMap(s => if(s.isEmpty) None else Some(s.pop())) match {
+      case Some(part) =>
+        hits += 1
+        part
+      case None =>
+        verbose(s"there was no cached $tpe, building a new one")
+        misses += 1
+        create(tpe, parent)
+    }
+
+  /**
+    * Schedules inflation of part views which will most likely be needed soon (in conversation being opened).
+    * Views are inflated one at a time, only when UI thread is idle, up to the expected count (limited by pool capacity).
+    *
+    * @param mix expected number of views of each part type
+    * @param parent message view used as parent for layout params, it's only referenced until prewarm is done
+    */
+  def prewarm(mix: Map[MsgPart, Int], parent: ViewGroup): Unit = {
+    Threading.assertUiThread()
+    val wasIdle = prewarmParent.isEmpty
+    prewarmTarget = mix map { case (tpe, count) => tpe -> math.min(count, capacity(tpe)) }
+    prewarmParent = Some(parent)
+    if (wasIdle) Looper.myQueue().addIdleHandler(prewarmHandler)
   }
 
-  def get(tpe: MsgPart, parent: ViewGroup): MessageViewPart = {
-    cache.get(tpe).flatMap(s => if(s.isEmpty) None else Some(s.pop())).getOrElse {
-      verbose(s"there was no cached $tpe, building a new one")
-      import MsgPart._
-      tpe match {
-        case User               => ViewHelper.inflate(R.layout.message_user, parent, false)
-        case Separator          => ViewHelper.inflate(R.layout.message_separator, parent, false)
-        case SeparatorLarge     => ViewHelper.inflate(R.layout.message_separator_large, parent, false)
-        case Footer             => ViewHelper.inflate(R.layout.message_footer, parent, false)
-        case Text               => ViewHelper.inflate(R.layout.message_text, parent, false)
-        case Ping               => ViewHelper.inflate(R.layout.message_ping, parent, false)
-        case Rename             => ViewHelper.inflate(R.layout.message_rename, parent, false)
-        case Image              => ViewHelper.inflate(R.layout.message_image, parent, false)
-        case YouTube            => ViewHelper.inflate(R.layout.message_youtube, parent, false)
-        case WebLink            => ViewHelper.inflate(R.layout.message_link_preview, parent, false)
-        case FileAsset          => ViewHelper.inflate(R.layout.message_file_asset, parent, false)
-        case AudioAsset         => ViewHelper.inflate(R.layout.message_audio_asset, parent, false)
-        case VideoAsset         => ViewHelper.inflate(R.layout.message_video_asset, parent, false)
-        case Location           => ViewHelper.inflate(R.layout.message_location, parent, false)
-        case MemberChange       => ViewHelper.inflate(R.layout.message_member_change, parent, false)
-        case ConnectRequest     => ViewHelper.inflate(R.layout.message_connect_request, parent, false)
-        case ConversationStart  => ViewHelper.inflate(R.layout.message_conversation_start, parent, false)
-        case WirelessLink       => ViewHelper.inflate(R.layout.message_wireless_link, parent, false)
-        case OtrMessage         => ViewHelper.inflate(R.layout.message_otr_part, parent, false)
-        case SoundMedia         => ViewHelper.inflate(R.layout.message_soundmedia, parent, false)
-        case MissedCall         => ViewHelper.inflate(R.layout.message_missed_call, parent, false)
-        case EphemeralDots      => ViewHelper.inflate(R.layout.message_ephemeral_dots_view, parent, false)
-        case WifiWarning        => ViewHelper.inflate(R.layout.message_wifi_warning, parent, false)
-        case Empty              => new EmptyPartView(parent.getContext)
-        case Unknown            => new EmptyPartView(parent.getContext) // TODO: display error msg, only used in internal
-      }
+  private def prewarmNext(): Boolean = {
+    val missing = prewarmTarget find { case (tpe, count) => cache.get(tpe).fold(0)(_.size) < count }
+    (missing, prewarmParent) match {
+      case (Some((tpe, _)), Some(parent)) =>
+        verbose(s"prewarming part: $tpe")
+        cache.getOrElseUpdate(tpe, new mutable.Stack[MessageViewPart]()).push(create(tpe, parent))
+        true
+      case _ =>
+        prewarmTarget = Map.empty
+        prewarmParent = None
+        false // removes idle handler
+    }
+  }
+
+  private def create(tpe: MsgPart, parent: ViewGroup): MessageViewPart = {
+    import MsgPart._
+    tpe match {
+      case User               => ViewHelper.inflate(R.layout.message_user, parent, false)
+      case Separator          => ViewHelper.inflate(R.layout.message_separator, parent, false)
+      case SeparatorLarge     => ViewHelper.inflate(R.layout.message_separator_large, parent, false)
+      case Footer             => ViewHelper.inflate(R.layout.message_footer, parent, false)
+      case Text               => ViewHelper.inflate(R.layout.message_text, parent, false)
+      case Ping               => ViewHelper.inflate(R.layout.message_ping, parent, false)
+      case Rename             => ViewHelper.inflate(R.layout.message_rename, parent, false)
+      case Image              => ViewHelper.inflate(R.layout.message_image, parent, false)
+      case YouTube            => ViewHelper.inflate(R.layout.message_youtube, parent, false)
+      case WebLink            => ViewHelper.inflate(R.layout.message_link_preview, parent, false)
+      case FileAsset          => ViewHelper.inflate(R.layout.message_file_asset, parent, false)
+      case AudioAsset         => ViewHelper.inflate(R.layout.message_audio_asset, parent, false)
+      case VideoAsset         => ViewHelper.inflate(R.layout.message_video_asset, parent, false)
+      case Location           => ViewHelper.inflate(R.layout.message_location, parent, false)
+      case MemberChange       => ViewHelper.inflate(R.layout.message_member_change, parent, false)
+      case ConnectRequest     => ViewHelper.inflate(R.layout.message_connect_request, parent, false)
+      case ConversationStart  => ViewHelper.inflate(R.layout.message_conversation_start, parent, false)
+      case WirelessLink       => ViewHelper.inflate(R.layout.message_wireless_link, parent, false)
+      case OtrMessage         => ViewHelper.inflate(R.layout.message_otr_part, parent, false)
+      case SoundMedia         => ViewHelper.inflate(R.layout.message_soundmedia, parent, false)
+      case MissedCall         => ViewHelper.inflate(R.layout.message_missed_call, parent, false)
+      case EphemeralDots      => ViewHelper.inflate(R.layout.message_ephemeral_dots_view, parent, false)
+      case WifiWarning        => ViewHelper.inflate(R.layout.message_wifi_warning, parent, false)
+      case Empty              => new EmptyPartView(parent.getContext)
+      case Unknown            => new EmptyPartView(parent.getContext) // TODO: display error msg, only used in internal
     }
   }
 
   def recycle(view: View, resId: Int): Unit = {
     verbose(s"recycling view: $resId")
-    viewCache.getOrElseUpdate(resId, new mutable.Stack[View]()).push(view)
+    val pool = viewCache.getOrElseUpdate(resId, new mutable.Stack[View]())
+    if (pool.size < MaxPooledViews) pool.push(view)
+    else evictions += 1
   }
 
   def get[A <: View](resId: Int, parent: ViewGroup): A =
-    viewCache.get(resId).flatMap(s => if (s.isEmpty) None else Some(s.pop().asInstanceOf[A])).getOrElse { ViewHelper.inflate[A](resId, parent, addToParent = false) }
+    viewCache.get(resId).flatMap(s => if (s.isEmpty) None else Some(s.pop().asInstanceOf[A])) match {
+      case Some(view) =>
+        hits += 1
+        view
+      case None =>
+        misses += 1
+        ViewHelper.inflate[A](resId, parent, addToParent = false)
+    }
+}
 
+object MessageViewFactory {
+
+  case class PoolStats(hits: Int, misses: Int, evictions: Int, pooled: Int)
+
+  val MaxPooledViews = 24 // per layout resource, those are mostly chatheads in member change messages
+
+  def capacity(tpe: MsgPart): Int = {
+    import MsgPart._
+    tpe match {
+      case Text | User                                  => 12
+      case Separator | SeparatorLarge | Footer          => 8
+      case Image | WebLink | FileAsset | MemberChange   => 6
+      case Empty | Unknown                              => 2
+      case _                                            => 4
+    }
+  }
 }
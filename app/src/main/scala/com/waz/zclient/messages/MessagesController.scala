@@ -19,7 +19,6 @@ package com.waz.zclient.messages
 
 import android.view.View
 import com.waz.ZLog.ImplicitTag._
-import com.waz.api.Message
 import com.waz.model.{ConvId, MessageData, MessageId, SyncId}
 import com.waz.service.ZMessaging
 import com.waz.utils.events.{EventContext, EventStream, Signal}
@@ -95,20 +94,20 @@ import scala.concurrent.Future
 
   def isLastSelf(id: MessageId) = lastSelfMessage.currentValue.exists(_.id == id)
 
-  def onMessageRead(msg: MessageData) = fullyVisibleMessagesList.currentValue foreach {
-    case Some(convId) if msg.convId == convId =>
-      if (msg.isEphemeral && !msg.expired)
-        zms.head foreach  { _.ephemeral.onMessageRead(msg.id) }
+  val readState = new ReadStateAggregator(zms)
 
-      if (msg.time isAfter lastReadTime)
-        zms.head.foreach { _.convsUi.setLastRead(msg.convId, msg) }
+  // read state is flushed whenever messages list visibility changes (page, conversation or ui state change)
+  fullyVisibleMessagesList.onChanged { _ => readState.flush() }
 
-      if (msg.state == Message.Status.FAILED)
-        zms.head.foreach { _.messages.markMessageRead(convId, msg.id) }
+  def onMessageRead(msg: MessageData) = fullyVisibleMessagesList.currentValue foreach {
+    case Some(convId) if msg.convId == convId =>
+      readState.onMessageRead(msg, updateLastRead = msg.time isAfter lastReadTime)
     case _ =>
       // messages list is not visible, or not current conv, ignoring
   }
 
+  def onScrollIdle(): Unit = readState.flush()
+
   def getMessage(messageId: MessageId): Signal[Option[MessageData]] = {
     zms.flatMap(z => Signal.future(z.messagesStorage.get(messageId)))
   }
@@ -19,25 +19,41 @@ package com.waz.zclient.messages
 
 import java.util
 
+import android.support.v7.widget.RecyclerView
 import android.view.ViewGroup
 import com.waz.ZLog.ImplicitTag._
 import com.waz.ZLog._
+import com.waz.api.Message
 import com.waz.model._
 import com.waz.service.ZMessaging
+import com.waz.service.messages.MessageAndLikes
 import com.waz.threading.Threading
+import com.waz.ui.MemoryImageCache.BitmapRequest
 import com.waz.utils.events.{EventContext, Signal}
+import com.waz.zclient.common.views.ImageController.WireImage
+import com.waz.zclient.common.views.ImagePrefetcher
 import com.waz.zclient.conversation.ConversationController
+import com.waz.zclient.messages.MessagePartsPlanner.PlanRequest
 import com.waz.zclient.messages.MessageView.MsgBindOptions
+import com.waz.zclient.messages.MessagesListAdapter._
 import com.waz.zclient.messages.MessagesListView.UnreadIndex
 import com.waz.zclient.messages.RecyclerCursor.RecyclerNotifier
+import com.waz.zclient.messages.parts.TextLayoutCache
+import com.waz.zclient.messages.parts.assets.ImageLayoutAssetPart
 import com.waz.zclient.{Injectable, Injector}
 
+import scala.collection.mutable
+
 class MessagesListAdapter(listDim: Signal[Dim2])(implicit inj: Injector, ec: EventContext)
   extends MessagesListView.Adapter() with Injectable { adapter =>
 
   lazy val zms = inject[Signal[ZMessaging]]
   lazy val listController = inject[MessagesController]
   lazy val conversationController = inject[ConversationController]
+  lazy val planner = inject[MessagePartsPlanner]
+  lazy val viewFactory = inject[MessageViewFactory]
+  lazy val textLayouts = inject[TextLayoutCache]
+  lazy val imagePrefetcher = new ImagePrefetcher()
   val ephemeralCount = Signal(Set.empty[MessageId])
 
   var unreadIndex = UnreadIndex(0)
@@ -57,15 +73,32 @@ class MessagesListAdapter(listDim: Signal[Dim2])(implicit inj: Injector, ec: Eve
   private var teamId      = Option.empty[TeamId]
   private var isGroup     = false
 
+  private var lastBoundPosition = 0
+  private val boundHolders = new mutable.HashMap[MessageId, MessageViewHolder]
+  private var prewarmPending = false
+
+  // previous focused, last self and last message ids, None until known
+  private var focused     = Option.empty[Option[MessageId]]
+  private var lastSelfMsg = Option.empty[MessageId]
+  private var lastMsg     = Option.empty[MessageId]
+
   cursor.onUi { case (c, teamId, conv, group, canHaveLink) =>
     if (!_cursor.contains(c)) {
       verbose(s"cursor changed: ${c.count}")
       _cursor.foreach(_.close())
       _cursor = Some(c)
+      if (!this.conv.contains(conv)) {
+        textLayouts.clear()
+        lastSelfMsg = None
+        lastMsg = None
+      }
       this.conv = Some(conv)
       this.teamId = teamId
       this.isGroup = group
       this.canHaveLink = canHaveLink
+      planner.clear()
+      imagePrefetcher.cancel()
+      prewarmPending = true
       notifier.notifyDataSetChanged()
     }
   }
@@ -89,31 +122,137 @@ class MessagesListAdapter(listDim: Signal[Dim2])(implicit inj: Injector, ec: Eve
   override def onBindViewHolder(holder: MessageViewHolder, pos: Int, payloads: util.List[AnyRef]): Unit = {
     verbose(s"onBindViewHolder: position: $pos")
     val data = message(pos)
+    unregister(holder)
+    boundHolders.put(data.message.id, holder)
+    val isLast = pos == adapter.getItemCount - 1
+    val prev = if (pos == 0) None else Some(message(pos - 1).message)
+    val next = if (isLast) None else Some(message(pos + 1).message)
+
+    holder.bind(data, prev, next, bindOptions(pos, data))
+    if (data.message.isEphemeral) {
+      ephemeralCount.mutate(_ + data.message.id)
+    }
 
+    prefetchPlans(pos)
+
+    if (prewarmPending) {
+      prewarmPending = false
+      prewarmParts(pos, holder.view)
+    }
+  }
+
+  /**
+    * Fills part views pool according to message types around first bound position in newly opened conversation,
+    * views are inflated when UI thread is idle, so scrolling doesn't stall on inflating them.
+    */
+  private def prewarmParts(pos: Int, parent: MessageView): Unit = {
+    val positions = math.max(0, pos - PrewarmSample) until math.min(getItemCount, pos + PrewarmSample)
+    val types = positions.map(message(_).message) flatMap {
+      case m if m.msgType == Message.Type.RICH_MEDIA => m.content.map(c => MsgPart(c.tpe))
+      case m => Seq(MsgPart(m.msgType, !isGroup))
+    }
+    val mix = types.groupBy(identity).map { case (tpe, ts) => tpe -> ts.size } ++
+      Map(MsgPart.User -> positions.size / 2, MsgPart.Separator -> 2, MsgPart.Footer -> 2)
+    verbose(s"prewarming parts: $mix, pool stats: ${viewFactory.stats}")
+    viewFactory.prewarm(mix, parent)
+  }
+
+  private def bindOptions(pos: Int, data: MessageAndLikes) = {
     val isLast = pos == adapter.getItemCount - 1
     val isSelf = zms.currentValue.exists(_.selfUserId == data.message.userId)
     val isFirstUnread = pos > 0 && !isSelf && unreadIndex.index == pos
     val isLastSelf = listController.isLastSelf(data.message.id)
-    val opts = MsgBindOptions(pos, isSelf, isLast, isLastSelf, isFirstUnread = isFirstUnread, listDim.currentValue.getOrElse(Dim2(0, 0)), isGroup, teamId, canHaveLink)
+    MsgBindOptions(pos, isSelf, isLast, isLastSelf, isFirstUnread = isFirstUnread, listDim.currentValue.getOrElse(Dim2(0, 0)), isGroup, teamId, canHaveLink)
+  }
 
-    val prev = if (pos == 0) None else Some(message(pos - 1).message)
-    val next = if (isLast) None else Some(message(pos + 1).message)
-    holder.bind(data, prev, next, opts)
-    if (data.message.isEphemeral) {
-      ephemeralCount.mutate(_ + data.message.id)
+  /**
+    * Prepares part plans for messages which will be bound next (in current scroll direction),
+    * so that binding them only needs to apply already computed plan (and look up already linkified text).
+    * Only positions in already loaded window are planned, so reading their entries never reloads the window on UI thread,
+    * plans themselves are computed in background.
+    */
+  private def prefetchPlans(pos: Int): Unit = {
+    val step = if (pos >= lastBoundPosition) 1 else -1
+    lastBoundPosition = pos
+    val count = getItemCount
+    def loaded(p: Int) = (p - 1 to p + 1).filter(i => i >= 0 && i < count).forall(i => _cursor.exists(_.isLoaded(i)))
+    val positions = (1 to PlanPrefetchDistance).map(pos + _ * step).takeWhile(p => p >= 0 && p < count && loaded(p))
+    val requests = positions map { p =>
+      val data = message(p)
+      val prev = if (p == 0) None else Some(message(p - 1).message)
+      val next = if (p == count - 1) None else Some(message(p + 1).message)
+      PlanRequest(data, prev, next, bindOptions(p, data))
     }
+    planner.prefetch(requests).flatMap(textLayouts.prefetch)(Threading.Background)
   }
 
+  /**
+    * Starts loading images of messages which will be scrolled into view next,
+    * requests are using the same width as ImagePartView will, so loaded bitmaps are reused from memory cache.
+    */
+  def prefetchImages(first: Int, last: Int, direction: Int, contentPadding: Int): Unit =
+    if (first >= 0 && last >= first) {
+      val dim = listDim.currentValue.getOrElse(Dim2(0, 0))
+      val count = getItemCount
+      val positions =
+        if (direction > 0) (last + 1) to math.min(count - 1, last + ImagePrefetcher.DefaultLookahead)
+        else (first - 1) to math.max(0, first - ImagePrefetcher.DefaultLookahead) by -1
+
+      // only positions in already loaded window, so that reading them never reloads the window on UI thread
+      val loaded = positions.takeWhile(p => _cursor.exists(_.isLoaded(p)))
+      val requests = if (dim.width <= 0) Nil else loaded.map(message(_).message) collect {
+        case m if m.msgType == Message.Type.ASSET =>
+          val size = ImageLayoutAssetPart.displaySize(dim.width, dim.height, m.imageDimensions.getOrElse(Dim2(1, 1)), contentPadding)
+          ImagePrefetcher.Request(WireImage(m.assetId), BitmapRequest.Regular(size.width), forceDownload = false)
+      }
+      imagePrefetcher.prefetch(requests, direction)
+    }
+
   override def onViewRecycled(holder: MessageViewHolder): Unit = {
+    unregister(holder)
     if (holder.view.isEphemeral) {
       holder.id.foreach(id =>
         ephemeralCount.mutate(_ - id))
     }
   }
 
+  private def unregister(holder: MessageViewHolder) =
+    holder.id foreach { id => if (boundHolders.get(id).contains(holder)) boundHolders.remove(id) }
+
+  private def notifyIfBound(id: MessageId)(changed: MessageViewHolder => Boolean) =
+    boundHolders.get(id) foreach { holder =>
+      val pos = holder.getAdapterPosition
+      if (pos != RecyclerView.NO_POSITION && changed(holder)) notifyItemChanged(pos)
+    }
+
+  /**
+    * Focus and last message changes only affect a couple of messages: the previous and the current one,
+    * so instead of letting every holder check those changes, we look up affected holders by message id.
+    * Until the previous value is known (first value after subscribing or after conversation change) all bound holders are checked.
+    */
+  private def affected(prev: Option[Set[MessageId]], current: Set[MessageId]) =
+    prev.fold(boundHolders.keySet.toSet)(_ ++ current)
+
+  conversationController.messages.focused.on(Threading.Ui) { mId =>
+    affected(focused.map(_.toSet), mId.toSet) foreach { id => notifyIfBound(id)(_.isFocused != mId.contains(id)) }
+    focused = Some(mId)
+  }
+
+  listController.lastSelfMessage.on(Threading.Ui) { m =>
+    affected(lastSelfMsg.map(Set(_)), Set(m.id)) foreach { id => notifyIfBound(id)(_.bindOptions.exists(_.isLastSelf != (id == m.id))) }
+    lastSelfMsg = Some(m.id)
+  }
+
+  listController.lastMessage.on(Threading.Ui) { m =>
+    affected(lastMsg.map(Set(_)), Set(m.id)) foreach { id => notifyIfBound(id)(_.bindOptions.exists(_.isLast != (id == m.id))) }
+    lastMsg = Some(m.id)
+  }
+
   override def onCreateViewHolder(parent: ViewGroup, viewType: Int): MessageViewHolder =
     MessageViewHolder(MessageView(parent, viewType), adapter)
 
+  def onScrolled(position: Int, velocity: Float): Unit = _cursor.foreach(_.onScrolled(position, velocity))
+
   def positionForMessage(messageData: MessageData) =
     cursor.head.flatMap { _._1.positionForMessage(messageData) } (Threading.Background)
 
@@ -138,6 +277,12 @@ class MessagesListAdapter(listDim: Signal[Dim2])(implicit inj: Injector, ec: Eve
       notifyChangedIfExists(pos)
     }
 
+    // moved message gets new neighbours, and so do the messages around its old and new position
+    override def notifyItemMoved(from: Int, to: Int) = {
+      adapter.notifyItemMoved(from, to)
+      Set(from, from + 1, to, to + 1) foreach notifyChangedIfExists
+    }
+
     override def notifyDataSetChanged() = {
       unreadIndex = UnreadIndex(lastReadIndex + 1)
       adapter.notifyDataSetChanged()
@@ -145,3 +290,8 @@ class MessagesListAdapter(listDim: Signal[Dim2])(implicit inj: Injector, ec: Eve
   }
 
 }
+
+object MessagesListAdapter {
+  val PlanPrefetchDistance = 4
+  val PrewarmSample = 15
+}
@@ -19,11 +19,15 @@ package com.waz.zclient.messages
 
 import android.content.Context
 import android.support.v7.widget.{LinearLayoutManager, LinearSmoothScroller, RecyclerView}
+import com.waz.utils.events.EventStream
 
 class MessagesListLayoutManager(context: Context, orientation: Int, reverseLayout: Boolean) extends LinearLayoutManager(context, orientation, reverseLayout) {
 
   private var snapTo = LinearSmoothScroller.SNAP_TO_END
 
+  // (first visible, last visible, direction) on every scroll, direction is positive when scrolling towards the end of the list
+  val onScrolled = EventStream[(Int, Int, Int)]()
+
   setStackFromEnd(true)
 
   override def supportsPredictiveItemAnimations(): Boolean = true
@@ -32,6 +36,12 @@ class MessagesListLayoutManager(context: Context, orientation: Int, reverseLayou
 
   def snapToEnd(): Unit = snapTo = LinearSmoothScroller.SNAP_TO_END
 
+  override def scrollVerticallyBy(dy: Int, recycler: RecyclerView.Recycler, state: RecyclerView.State): Int = {
+    val scrolled = super.scrollVerticallyBy(dy, recycler, state)
+    if (scrolled != 0) onScrolled ! (findFirstVisibleItemPosition(), findLastVisibleItemPosition(), math.signum(scrolled))
+    scrolled
+  }
+
   override def smoothScrollToPosition(recyclerView: RecyclerView, state: RecyclerView.State, position: Int): Unit = {
     val linearSmoothScroller = new MessagesListSmoothScroller(context, snapTo)
     linearSmoothScroller.setTargetPosition(position)
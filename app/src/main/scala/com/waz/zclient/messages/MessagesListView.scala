@@ -23,6 +23,7 @@ import android.app.Activity
 import android.content.Context
 import android.support.v7.widget.RecyclerView.{OnScrollListener, ViewHolder}
 import android.support.v7.widget.{DefaultItemAnimator, LinearLayoutManager, RecyclerView}
+import android.os.SystemClock
 import android.util.AttributeSet
 import android.view.WindowManager
 import com.waz.ZLog.ImplicitTag._
@@ -39,7 +40,8 @@ import com.waz.zclient.messages.MessageView.MsgBindOptions
 import com.waz.zclient.messages.ScrollController.{BottomScroll, PositionScroll}
 import com.waz.zclient.messages.controllers.MessageActionsController
 import com.waz.zclient.ui.utils.KeyboardUtils
-import com.waz.zclient.{Injectable, Injector, ViewHelper}
+import com.waz.zclient.utils.ContextUtils.getDimenPx
+import com.waz.zclient.{Injectable, Injector, R, ViewHelper}
 
 class MessagesListView(context: Context, attrs: AttributeSet, style: Int) extends RecyclerView(context, attrs, style) with ViewHelper {
   def this(context: Context, attrs: AttributeSet) = this(context, attrs, 0)
@@ -90,6 +92,12 @@ class MessagesListView(context: Context, attrs: AttributeSet, style: Int) extend
     }
   }
 
+  private lazy val contentPadding = getDimenPx(R.dimen.content__padding_left) + getDimenPx(R.dimen.content__padding_right)
+
+  layoutManager.onScrolled.on(Threading.Ui) { case (first, last, direction) =>
+    adapter.prefetchImages(first, last, direction, contentPadding)
+  }
+
   scrollController.onScroll.on(Threading.Ui) { scroll =>
 
     def scrollCloseToTarget(target: Int, current: Int) =
@@ -131,8 +139,29 @@ class MessagesListView(context: Context, attrs: AttributeSet, style: Int) extend
   }
 
   addOnScrollListener(new OnScrollListener {
+    private var lastPosition = -1
+    private var lastTime = 0L
+    private var velocity = 0f
+
+    // tracks scroll velocity in items per second, so adapter can prefetch messages window ahead of scroll
+    override def onScrolled(recyclerView: RecyclerView, dx: Int, dy: Int): Unit = {
+      val position = if (dy >= 0) layoutManager.findLastVisibleItemPosition() else layoutManager.findFirstVisibleItemPosition()
+      val now = SystemClock.uptimeMillis()
+      if (position != RecyclerView.NO_POSITION) {
+        if (lastPosition >= 0 && now > lastTime) {
+          val current = (position - lastPosition) * 1000f / (now - lastTime)
+          velocity = if (math.signum(current) == math.signum(velocity)) (velocity + current) / 2 else current
+        }
+        lastPosition = position
+        lastTime = now
+        adapter.onScrolled(position, velocity)
+      }
+    }
+
     override def onScrollStateChanged(recyclerView: RecyclerView, newState: Int): Unit = newState match {
       case RecyclerView.SCROLL_STATE_IDLE =>
+        velocity = 0f
+        messagesController.onScrollIdle()
         val page = inject[INavigationController].getCurrentPage
         if (page == Page.MESSAGE_STREAM) {
           scrollController.onScrolled(layoutManager.findLastVisibleItemPosition())
@@ -185,21 +214,9 @@ case class MessageViewHolder(view: MessageView, adapter: MessagesListAdapter)(im
   private var opts = Option.empty[MsgBindOptions]
   private var _isFocused = false
 
-  selection.focused.onChanged.on(Threading.Ui) { mId =>
-    if (_isFocused != (id == mId)) adapter.notifyItemChanged(getAdapterPosition)
-  }
-
-  msgsController.lastSelfMessage.onChanged.on(Threading.Ui) { m =>
-    opts foreach { o =>
-      if (o.isLastSelf != id.contains(m.id)) adapter.notifyItemChanged(getAdapterPosition)
-    }
-  }
-
-  msgsController.lastMessage.onChanged.on(Threading.Ui) { m =>
-    opts foreach { o =>
-      if (o.isLast != id.contains(m.id)) adapter.notifyItemChanged(getAdapterPosition)
-    }
-  }
+  // focus and last message changes are dispatched by adapter, which only notifies holders affected by them
+  def bindOptions = opts
+  def isFocused = _isFocused
 
   // mark message as read if message is bound while list is visible
   private val messageRead =
@@ -0,0 +1,109 @@
+/**
+ * Wire
+ * Copyright (C) 2018 Wire Swiss GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.waz.zclient.messages
+
+import com.waz.ZLog.ImplicitTag._
+import com.waz.ZLog._
+import com.waz.api.Message
+import com.waz.model.{ConvId, MessageData, MessageId}
+import com.waz.service.ZMessaging
+import com.waz.threading.{CancellableFuture, SerialDispatchQueue}
+import com.waz.utils.events.Signal
+import com.waz.zclient.messages.ReadStateAggregator._
+
+import scala.concurrent.Future
+import scala.concurrent.duration._
+
+/**
+  * Collects read state updates produced while binding messages and applies them in batches.
+  *
+  * Every message bound in visible messages list is marked as read, when scrolling through many unread messages this would
+  * generate separate storage writes and sync requests for each of them. Instead we only keep the newest read message
+  * per conversation together with ids of read ephemeral and failed messages, and flush those when scrolling stops,
+  * when messages list is hidden, or when no new updates arrived for a short time.
+  */
+class ReadStateAggregator(zms: Signal[ZMessaging], debounce: FiniteDuration = DebounceDelay) {
+
+  private implicit val dispatcher = new SerialDispatchQueue(name = "ReadStateAggregator")
+
+  private var pending = Map.empty[ConvId, PendingReads]
+  private var scheduled = Option.empty[CancellableFuture[Unit]]
+
+  private var received = 0
+  private var applied = 0
+
+  def onMessageRead(msg: MessageData, updateLastRead: Boolean): Unit = Future {
+    val p = pending.getOrElse(msg.convId, PendingReads())
+    val lastRead =
+      if (updateLastRead && p.lastRead.forall(_.time isBefore msg.time)) Some(msg)
+      else p.lastRead
+    val ephemeral = if (msg.isEphemeral && !msg.expired) p.ephemeral + msg.id else p.ephemeral
+    val failed = if (msg.state == Message.Status.FAILED) p.failed + msg.id else p.failed
+
+    val updated = PendingReads(lastRead, ephemeral, failed)
+
+    // only newly recorded updates are counted (newer last read, new ephemeral or failed id), so stats show real coalescing
+    if (updated != p) {
+      received += updated.updatesCount - p.updatesCount + (if (p.lastRead.isDefined && lastRead != p.lastRead) 1 else 0)
+      pending += msg.convId -> updated
+
+      scheduled.foreach(_.cancel())
+      scheduled = Some(CancellableFuture.delay(debounce).map(_ => flushPending()))
+    }
+  }
+
+  def flush(): Future[Unit] = Future {
+    scheduled.foreach(_.cancel())
+    scheduled = None
+    flushPending()
+  }
+
+  def stats: Future[ReadStats] = Future(ReadStats(received, applied))
+
+  private def flushPending(): Unit = if (pending.nonEmpty) {
+    val reads = pending
+    pending = Map.empty
+    applied += reads.valuesIterator.map(_.updatesCount).sum
+    verbose(s"flushing read state for ${reads.size} conversations, coalesced updates: ${received - applied}")
+
+    zms.head foreach { z =>
+      reads foreach { case (convId, PendingReads(lastRead, ephemeral, failed)) =>
+        lastRead.foreach(z.convsUi.setLastRead(convId, _))
+        ephemeral.foreach(z.ephemeral.onMessageRead)
+        failed.foreach(z.messages.markMessageRead(convId, _))
+      }
+    }
+  }
+}
+
+object ReadStateAggregator {
+
+  val DebounceDelay = 500.millis
+
+  case class PendingReads(lastRead: Option[MessageData] = None, ephemeral: Set[MessageId] = Set.empty, failed: Set[MessageId] = Set.empty) {
+    def updatesCount = lastRead.size + ephemeral.size + failed.size
+  }
+
+  /**
+    * @param received number of read updates recorded from message views, reads which were not newer are ignored
+    * @param applied number of updates actually sent to storage/sync, the rest was coalesced
+    */
+  case class ReadStats(received: Int, applied: Int) {
+    def coalesced = received - applied
+  }
+}
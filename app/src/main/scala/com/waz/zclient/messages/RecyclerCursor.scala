@@ -17,6 +17,7 @@
  */
 package com.waz.zclient.messages
 
+import android.app.ActivityManager
 import com.waz.ZLog.ImplicitTag._
 import com.waz.ZLog._
 import com.waz.api.MessageFilter
@@ -43,7 +44,7 @@ class RecyclerCursor(val conv: ConvId, zms: ZMessaging, val adapter: RecyclerNot
   val countSignal = Signal[Int]()
   val cursorLoaded = Signal[Boolean](false)
 
-  private val window = new IndexWindow(this, adapter)
+  private val window = new IndexWindow(this, adapter, maxSize = IndexWindow.maxWindowSize(inject[ActivityManager].getMemoryClass))
   private val closed = Signal(false)
   private val cursor = Signal(Option.empty[MessagesCursor])
   private var subs = Seq.empty[Subscription]
@@ -108,13 +109,28 @@ class RecyclerCursor(val conv: ConvId, zms: ZMessaging, val adapter: RecyclerNot
       window.reload(c, position)
     }
 
-    c(position)
+    window.read(c(position))
   })
 
+  /**
+    * Called on scroll, lets the window load next entries in background before they are needed.
+    * @param velocity scroll speed in items per second, negative when scrolling towards older messages
+    */
+  def onScrolled(position: Int, velocity: Float): Unit =
+    cursor.currentValue.flatten foreach { c => window.prefetch(c, position, velocity) }
+
+  // true if reading given position doesn't need to reload the window
+  def isLoaded(position: Int): Boolean = !window.shouldReload(position)
+
   def lastReadIndex: Int = cursor.currentValue.flatMap(_.map(_.lastReadIndex)).getOrElse(-1)
 
+  // also prepares window around found position, so that jumping there doesn't need to load it on UI thread
   def positionForMessage(messageData: MessageData): Future[Int] =
-    cursor.collect { case Some(c) => c } .head.flatMap(_.asyncIndexOf(messageData.time, binarySearch = true))
+    for {
+      c   <- cursor.collect { case Some(c) => c } .head
+      pos <- c.asyncIndexOf(messageData.time, binarySearch = true)
+      _   <- if (pos >= 0) window.prefetchAt(c, pos) else Future.successful(())
+    } yield pos
 }
 
 object RecyclerCursor {
@@ -124,5 +140,9 @@ object RecyclerCursor {
     def notifyItemRangeInserted(index: Int, length: Int): Unit
     def notifyItemRangeRemoved(pos: Int, count: Int): Unit
     def notifyItemRangeChanged(index: Int, length: Int): Unit
+
+    // adapters which don't care about moves just re-bind whole affected range
+    def notifyItemMoved(from: Int, to: Int): Unit =
+      notifyItemRangeChanged(math.min(from, to), math.abs(from - to) + 1)
   }
 }
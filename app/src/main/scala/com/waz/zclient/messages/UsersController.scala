@@ -30,6 +30,7 @@ import com.waz.zclient.messages.UsersController.DisplayName
 import com.waz.zclient.messages.UsersController.DisplayName.{Me, Other}
 import com.waz.zclient.tracking.AvailabilityChanged
 import com.waz.zclient.utils.ContextUtils._
+import com.waz.zclient.utils.{UiStorage, UsersSignal}
 import com.waz.zclient.{Injectable, Injector, R}
 
 import scala.concurrent.Future
@@ -39,6 +40,8 @@ class UsersController(implicit injector: Injector, context: Context) extends Inj
   private val zMessaging = inject[Signal[ZMessaging]]
   private val tracking   = inject[TrackingService]
 
+  private implicit lazy val uiStorage = inject[UiStorage]
+
   lazy val itemSeparator = getString(R.string.content__system__item_separator)
   lazy val lastSeparator = getString(R.string.content__system__last_item_separator)
 
@@ -103,10 +106,9 @@ class UsersController(implicit injector: Injector, context: Context) extends Inj
 
   def memberDisplayNames(message: Signal[MessageData], boldNames: Boolean = false) =
     for {
-      zms <- zMessaging
-      msg <- message
-      names <- Signal.sequence[String](msg.members.toSeq.sortBy(_.str).map(displayNameString): _*)
-        .map(_.map(name => if (boldNames) s"[[$name]]" else name))
+      zms   <- zMessaging
+      msg   <- message
+      names <- memberNames(zms.selfUserId, msg.members).map(_.map(name => if (boldNames) s"[[$name]]" else name))
     } yield
       names match {
         case Seq() => ""
@@ -116,6 +118,20 @@ class UsersController(implicit injector: Injector, context: Context) extends Inj
           s"${names.take(n - 1).mkString(itemSeparator + " ")} $lastSeparator ${names.last}"
       }
 
+  /**
+    * Display names of given members ordered by user id, all users are loaded with single bulk signal.
+    * Names are emitted as soon as first users are loaded, members which are not available yet are shown with placeholder.
+    */
+  private def memberNames(self: UserId, members: Set[UserId]): Signal[Seq[String]] = {
+    val ids = members.toSeq.sortBy(_.str)
+    UsersSignal(members - self).map { users =>
+      ids.map {
+        case id if id == self => getString(R.string.content__system__you)
+        case id => users.get(id).fold(getString(R.string.content__system__member_loading))(_.getDisplayName)
+      }
+    }
+  }
+
   def userHandle(id: UserId): Signal[Option[Handle]] = user(id).map(_.handle)
 
   def userFirstContact(id: UserId): Signal[Option[Contact]] =
@@ -0,0 +1,117 @@
+/**
+ * Wire
+ * Copyright (C) 2018 Wire Swiss GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.waz.zclient.messages.parts
+
+import android.content.Context
+import android.text.{Layout, Spannable, StaticLayout, TextPaint}
+import android.util.LruCache
+import com.waz.ZLog.ImplicitTag._
+import com.waz.ZLog._
+import com.waz.api.Message
+import com.waz.model.{MessageContent, MessageData, MessageId}
+import com.waz.threading.Threading
+import com.waz.zclient.messages.MessagePartsPlanner.{PartsPlan, PlanRequest}
+import com.waz.zclient.messages.MsgPart
+import com.waz.zclient.messages.parts.TextLayoutCache._
+import com.waz.zclient.ui.text.LinkTextView
+import com.waz.zclient.utils.ContextUtils._
+import com.waz.zclient.{R, WireContext}
+import org.threeten.bp.Instant
+
+import scala.concurrent.Future
+import scala.util.control.NonFatal
+
+/**
+  * Cache of linkified message texts used by TextPartView.
+  *
+  * Linkifying (and measuring) long texts is expensive, so list adapter prepares texts of messages which will be bound soon
+  * on background thread, binding then only needs a cache lookup.
+  * Preparing also lays out the text once with the same paint and width as the view will use,
+  * this warms up platform text measurement caches, so the actual measure pass on UI thread is cheaper.
+  */
+class TextLayoutCache(implicit cxt: WireContext) {
+
+  private val texts = new LruCache[TextKey, Spannable](CacheSize)
+
+  val textSizeRegular = getDimenPx(R.dimen.wire__text_size__regular)
+  val textSizeEmoji   = getDimenPx(R.dimen.wire__text_size__emoji)
+
+  private val horizontalPadding = getDimenPx(R.dimen.content__padding_left) + getDimenPx(R.dimen.content__padding_right)
+
+  // copy of text view paint (with proper typeface), only available after first text view is bound
+  @volatile private var paint = Option.empty[TextPaint]
+
+  def textSize(msg: MessageData, part: Option[MessageContent]) =
+    if (isEmojiOnly(msg, part)) textSizeEmoji else textSizeRegular
+
+  def setPaint(p: TextPaint): Unit = if (paint.isEmpty) paint = Some(new TextPaint(p))
+
+  def get(msg: MessageData, part: Option[MessageContent], width: Int): Spannable = {
+    val key = TextKey(msg.id, msg.editTime, msg.expired, width, textSize(msg, part))
+    Option(texts.get(key)).getOrElse {
+      verbose(s"text cache miss for: ${msg.id}")
+      prepare(key, part.fold(msg.contentString)(_.content), warmUp = false)
+    }
+  }
+
+  /**
+    * Prepares texts for text parts of already planned messages.
+    */
+  def prefetch(plans: Seq[(PlanRequest, PartsPlan)]): Future[Unit] = Future {
+    plans foreach { case (PlanRequest(mAndL, _, _, opts), plan) =>
+      val msg = mAndL.message
+      plan.parts.find(_.tpe == MsgPart.Text) foreach { desc =>
+        val key = TextKey(msg.id, msg.editTime, msg.expired, opts.listDimensions.width, textSize(msg, desc.content))
+        if (texts.get(key) == null) prepare(key, desc.content.fold(msg.contentString)(_.content), warmUp = true)
+      }
+    }
+  } (Threading.Background)
+
+  private def prepare(key: TextKey, text: String, warmUp: Boolean): Spannable = {
+    val res = LinkTextView.linkify(text)
+    if (warmUp) warmUpLayout(res, key)
+    texts.put(key, res)
+    res
+  }
+
+  private def warmUpLayout(text: Spannable, key: TextKey): Unit = {
+    val w = key.width - horizontalPadding
+    paint foreach { p =>
+      if (w > 0) try {
+        val tp = new TextPaint(p)
+        tp.setTextSize(key.textSize)
+        new StaticLayout(text, tp, w, Layout.Alignment.ALIGN_NORMAL, 1f, 0f, true)
+      } catch {
+        case NonFatal(e) => warn("text layout warm up failed", e)
+      }
+    }
+  }
+
+  def clear(): Unit = texts.evictAll()
+}
+
+object TextLayoutCache {
+
+  val CacheSize = 100
+
+  // expired ephemeral messages keep their edit time, but their content is obfuscated, so they need separate entry
+  case class TextKey(id: MessageId, editTime: Instant, expired: Boolean, width: Int, textSize: Int)
+
+  def isEmojiOnly(msg: MessageData, part: Option[MessageContent]) =
+    part.fold(msg.msgType == Message.Type.TEXT_EMOJI_ONLY)(_.tpe == Message.Part.Type.TEXT_EMOJI_ONLY)
+}
@@ -22,7 +22,7 @@ import android.animation.ValueAnimator.AnimatorUpdateListener
 import android.content.Context
 import android.graphics.Color
 import android.util.{AttributeSet, TypedValue}
-import com.waz.api.{ContentSearchQuery, Message}
+import com.waz.api.ContentSearchQuery
 import com.waz.model.{MessageContent, MessageData}
 import com.waz.service.messages.MessageAndLikes
 import com.waz.threading.Threading
@@ -33,7 +33,7 @@ import com.waz.zclient.messages.MessageView.MsgBindOptions
 import com.waz.zclient.messages.{ClickableViewPart, MsgPart}
 import com.waz.zclient.ui.text.LinkTextView
 import com.waz.zclient.ui.utils.ColorUtils
-import com.waz.zclient.{R, ViewHelper}
+import com.waz.zclient.ViewHelper
 
 class TextPartView(context: Context, attrs: AttributeSet, style: Int) extends LinkTextView(context, attrs, style) with ViewHelper with ClickableViewPart with EphemeralPartView {
   def this(context: Context, attrs: AttributeSet) = this(context, attrs, 0)
@@ -44,8 +44,7 @@ class TextPartView(context: Context, attrs: AttributeSet, style: Int) extends Li
   val collectionController = inject[CollectionController]
   val accentColorController = inject[AccentColorController]
 
-  val textSizeRegular = context.getResources.getDimensionPixelSize(R.dimen.wire__text_size__regular)
-  val textSizeEmoji = context.getResources.getDimensionPixelSize(R.dimen.wire__text_size__emoji)
+  val textLayouts = inject[TextLayoutCache]
 
   registerEphemeral(this)
 
@@ -92,11 +91,11 @@ class TextPartView(context: Context, attrs: AttributeSet, style: Int) extends Li
   override def set(msg: MessageAndLikes, part: Option[MessageContent], opts: Option[MsgBindOptions]): Unit = {
     animator.end()
     super.set(msg, part, opts)
-    setTextSize(TypedValue.COMPLEX_UNIT_PX, if (isEmojiOnly(msg.message, part)) textSizeEmoji else textSizeRegular)
-    setTextLink(part.fold(msg.message.contentString)(_.content))
+    setTextSize(TypedValue.COMPLEX_UNIT_PX, textLayouts.textSize(msg.message, part))
+    textLayouts.setPaint(getPaint)
+    setLinkifiedText(textLayouts.get(msg.message, part, opts.fold(0)(_.listDimensions.width)))
     messagePart ! part
   }
 
-  def isEmojiOnly(msg: MessageData, part: Option[MessageContent]) =
-    part.fold(msg.msgType == Message.Type.TEXT_EMOJI_ONLY)(_.tpe == Message.Part.Type.TEXT_EMOJI_ONLY)
+  def isEmojiOnly(msg: MessageData, part: Option[MessageContent]) = TextLayoutCache.isEmojiOnly(msg, part)
 }
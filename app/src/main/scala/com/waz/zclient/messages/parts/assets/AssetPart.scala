@@ -126,34 +126,8 @@ trait ImageLayoutAssetPart extends AssetPart {
   val displaySize = for {
     maxW <- maxWidth
     maxH <- maxHeight
-    Dim2(imW, imH) <- imageDim
-  } yield {
-    val centered = maxW - contentPaddingStart - contentPaddingEnd
-
-    val heightToWidth = imH.toDouble / imW.toDouble
-
-    val width = if (imH > imW) centered else maxW
-    val height = heightToWidth * width
-
-    //fit image within view port height-wise (plus the little bit of buffer space), if it's height to width ratio is not too big. For super tall/thin
-    //images, we leave them as is otherwise they might become too skinny to be viewed properly
-    val scaleDownToHeight = maxH * (1 - scaleDownBuffer)
-    val scaleDown = if (height > scaleDownToHeight && heightToWidth < scaleDownUnderRatio) scaleDownToHeight.toDouble / height.toDouble else 1D
-
-    val scaledWidth = width * scaleDown
-
-    //finally, make sure the width of the now height-adjusted image is either the full view port width, or less than
-    //or equal to the centered area (taking left and right margins into consideration). This is important to get the
-    //padding right in the next signal
-    val finalWidth =
-      if (scaledWidth <= centered) scaledWidth
-      else if (scaledWidth >= maxW) maxW
-      else centered
-
-    val finalHeight = heightToWidth * finalWidth
-
-    Dim2(finalWidth.toInt, finalHeight.toInt)
-  }
+    imDim <- imageDim
+  } yield ImageLayoutAssetPart.displaySize(maxW, maxH, imDim, contentPaddingStart + contentPaddingEnd)
 
   val padding = for {
     maxW <- maxWidth
@@ -196,4 +170,36 @@ object ImageLayoutAssetPart {
 
   //Height to width - images with a lower ratio will be scaled to fit in the view port. Taller images will be allowed to keep their size
   val scaleDownUnderRatio = 2.0
+
+  /**
+    * Size of displayed image, its width is also the width of requested bitmap (used by image prefetching).
+    */
+  def displaySize(maxW: Int, maxH: Int, imageDim: Dim2, horizontalPadding: Int): Dim2 = {
+    val Dim2(imW, imH) = imageDim
+    val centered = maxW - horizontalPadding
+
+    val heightToWidth = imH.toDouble / imW.toDouble
+
+    val width = if (imH > imW) centered else maxW
+    val height = heightToWidth * width
+
+    //fit image within view port height-wise (plus the little bit of buffer space), if it's height to width ratio is not too big. For super tall/thin
+    //images, we leave them as is otherwise they might become too skinny to be viewed properly
+    val scaleDownToHeight = maxH * (1 - scaleDownBuffer)
+    val scaleDown = if (height > scaleDownToHeight && heightToWidth < scaleDownUnderRatio) scaleDownToHeight.toDouble / height.toDouble else 1D
+
+    val scaledWidth = width * scaleDown
+
+    //finally, make sure the width of the now height-adjusted image is either the full view port width, or less than
+    //or equal to the centered area (taking left and right margins into consideration). This is important to get the
+    //padding right in the next signal
+    val finalWidth =
+      if (scaledWidth <= centered) scaledWidth
+      else if (scaledWidth >= maxW) maxW
+      else centered
+
+    val finalHeight = heightToWidth * finalWidth
+
+    Dim2(finalWidth.toInt, finalHeight.toInt)
+  }
 }
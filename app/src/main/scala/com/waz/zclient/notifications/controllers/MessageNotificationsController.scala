@@ -32,12 +32,10 @@ import com.waz.ZLog.verbose
 import com.waz.api.NotificationsHandler.NotificationType
 import com.waz.api.NotificationsHandler.NotificationType._
 import com.waz.api.impl.AccentColor
-import com.waz.bitmap.BitmapUtils
 import com.waz.model._
 import com.waz.service.{AccountsService, ZMessaging}
 import com.waz.service.push.NotificationService.NotificationInfo
-import com.waz.threading.{CancellableFuture, Threading}
-import com.waz.ui.MemoryImageCache.BitmapRequest
+import com.waz.threading.Threading
 import com.waz.utils.events.{EventContext, Signal}
 import com.waz.utils.{returning, _}
 import com.waz.utils.wrappers.Bitmap
@@ -53,8 +51,8 @@ import com.waz.zclient.utils.{DeprecationUtils, RingtoneUtils, ViewUtils}
 import com.waz.zms.NotificationsAndroidService
 import org.threeten.bp.Instant
 
+import scala.collection.mutable
 import scala.concurrent.Future
-import scala.concurrent.duration._
 
 class MessageNotificationsController(implicit inj: Injector, cxt: Context, eventContext: EventContext) extends Injectable { self =>
 
@@ -102,14 +100,54 @@ class MessageNotificationsController(implicit inj: Injector, cxt: Context, event
         val currentNotifications = notifications.toSeq.flatMap {
           case (account, (_, nots)) => nots.map(_.convId).distinct.map(cId => toNotificationConvId(account, cId))
         } ++ currentBundles
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M)
-          notManager.getActiveNotifications
-            .collect { case notification if !currentNotifications.contains(notification.getId) => notification.getId }
-            .foreach(notManager.cancel)
+        cancelStale(currentNotifications.toSet)
       }
     }
   }
 
+  // content of notifications we posted, by notification id, only accessed on ui thread
+  private val posted = new mutable.HashMap[Int, Any]
+  private var staleScanned = false
+  private var publishStats = PublishStats(0, 0, 0)
+
+  /**
+    * Cancels our notifications which are not part of current update.
+    * Active notifications are only scanned once, to clean up the ones posted before app was restarted.
+    */
+  private def cancelStale(current: Set[Int]): Unit = {
+    val stale =
+      if (staleScanned) posted.keySet.toSet -- current
+      else {
+        staleScanned = true
+        notManager.getActiveNotifications.map(_.getId).toSet ++ posted.keySet -- current
+      }
+    stale foreach { id =>
+      notManager.cancel(id)
+      posted -= id
+    }
+    publishStats = publishStats.copy(cancelled = publishStats.cancelled + stale.size)
+  }
+
+  /**
+    * Returns true if notification with given content has to be (re)built and posted.
+    * Content is compared by equality, it's only remembered by `markPosted` once the notification was actually posted.
+    */
+  private def contentChanged(id: Int, content: Any): Boolean =
+    if (posted.get(id).contains(content)) {
+      publishStats = publishStats.copy(skipped = publishStats.skipped + 1)
+      false
+    } else {
+      publishStats = publishStats.copy(rebuilt = publishStats.rebuilt + 1)
+      true
+    }
+
+  // displayed flag is flipped by `markAsDisplayed` after every publish, it only affects the ticker of already posted notification
+  private def contentOf(nots: Seq[NotificationInfo]) = nots.map(_.copy(hasBeenDisplayed = false))
+
+  private def markPosted(id: Int, content: Any): Future[Unit] = Future { posted(id) = content } (Threading.Ui)
+
+  def stats: PublishStats = publishStats
+
   val conversationsBeingDisplayed = for {
     gl <- Signal.future(ZMessaging.globalModule)
     accounts <- accounts.accountsWithManagers
@@ -141,37 +179,39 @@ class MessageNotificationsController(implicit inj: Injector, cxt: Context, event
       gl.notifications.notificationsSourceVisible ! convs
   }
 
+  private lazy val iconWidth = ViewUtils.toPx(context, 64)
+
+  private val pictureCache = new NotificationPictureCache
+
+  // icons of senders in the current conversation are prepared before their notifications arrive
+  (for {
+    z    <- zms
+    conv <- convController.currentConvId
+  } yield (z, conv)) { case (z, conv) => pictureCache.warmUp(z, conv, iconWidth) }
+
   private def getPictureForNotifications(userId: UserId, nots: Seq[NotificationInfo]): Future[Option[Bitmap]] = {
     val pictures = nots.flatMap(_.userPicture).distinct
 
-    val iconWidth = ViewUtils.toPx(context, 64)
-
     val assetId = if (pictures.size == 1) {
       pictures.headOption
     } else {
       None
     }
 
-    for {
-      zms <- accounts.getZms(userId)
-      assetData <- (zms, assetId) match {
-        case (Some(z), Some(aId)) => z.assetsStorage.get(aId)
-        case _ => Future.successful(None)
+    assetId.fold(Future.successful(Option.empty[Bitmap])) { aId =>
+      accounts.getZms(userId) flatMap {
+        case Some(z) => pictureCache.get(z, aId, iconWidth)
+        case None    => Future.successful(None)
       }
-      bmp <- (zms, assetData) match {
-        case (Some(z), Some(ad)) => z.imageLoader.loadBitmap(ad, BitmapRequest.Single(iconWidth), forceDownload = false).map(Option(_)).withTimeout(500.millis).recoverWith {
-          case _ : Throwable => CancellableFuture.successful(None)
-        }.future
-        case _ => Future.successful(None)
-      }
-    } yield {
-      bmp.map { original => BitmapUtils.createRoundBitmap(original, iconWidth, 0, Color.TRANSPARENT) }
     }
   }
 
   private def createSummaryNotification(userId: UserId, silent: Boolean, nots: Seq[NotificationInfo], teamName: Option[String]): Unit =
-    if (nots.isEmpty) notManager.cancel(toNotificationGroupId(userId))
-    else if (Build.VERSION.SDK_INT <= Build.VERSION_CODES.M || !notManager.getActiveNotifications.exists(_.getId == toNotificationGroupId(userId))) {
+    if (nots.isEmpty) {
+      notManager.cancel(toNotificationGroupId(userId))
+      posted -= toNotificationGroupId(userId)
+    }
+    else if (Build.VERSION.SDK_INT <= Build.VERSION_CODES.M || !posted.contains(toNotificationGroupId(userId))) {
       verbose(s"creating summary notification")
 
       val inboxStyle = new NotificationCompat.InboxStyle()
@@ -194,6 +234,7 @@ class MessageNotificationsController(implicit inj: Injector, cxt: Context, event
       notificationColor(userId).foreach(builder.setColor)
 
       notManager.notify(toNotificationGroupId(userId), builder.build())
+      posted(toNotificationGroupId(userId)) = SummaryContent
     }
 
   private def createConvNotifications(userId: UserId, silent: Boolean, nots: Seq[NotificationInfo], teamName: Option[String]): Future[Unit] = {
@@ -217,18 +258,25 @@ class MessageNotificationsController(implicit inj: Injector, cxt: Context, event
 
       Future.sequence(
       groupedConvs.map {
-        case (convId, convNots) if convNots.size == 1 =>
-          val allBeenDisplayed = convNots.forall(_.hasBeenDisplayed)
-          getPictureForNotifications(userId, convNots).map { pic =>
-            publishNotification(Some(convId), getSingleMessageNotification(userId, convNots.head, silent, if (isGrouped) None else teamName, noTicker = allBeenDisplayed, pic))
-          }
         case (convId, convNots) =>
-          val allBeenDisplayed = convNots.forall(_.hasBeenDisplayed)
-          getPictureForNotifications(userId, convNots).map { pic =>
-            publishNotification(Some(convId), getMultipleMessagesNotification(userId, convNots, silent, noTicker = allBeenDisplayed, if (isGrouped) None else teamName, pic))
+          val id = toNotificationConvId(userId, convId)
+          val content = (contentOf(convNots), silent, isGrouped, teamName)
+          if (!contentChanged(id, content)) Future.successful(())
+          else {
+            val allBeenDisplayed = convNots.forall(_.hasBeenDisplayed)
+            getPictureForNotifications(userId, convNots).map { pic =>
+              val notification =
+                if (convNots.size == 1) getSingleMessageNotification(userId, convNots.head, silent, if (isGrouped) None else teamName, noTicker = allBeenDisplayed, pic)
+                else getMultipleMessagesNotification(userId, convNots, silent, noTicker = allBeenDisplayed, if (isGrouped) None else teamName, pic)
+              publishNotification(Some(convId), notification)
+            } flatMap { _ => markPosted(id, content) }
           }
       }.toSeq)
+    } else if (nots.nonEmpty && !contentChanged(toNotificationGroupId(userId), (contentOf(nots), silent, teamName))) {
+      Future.successful(())
     } else {
+      if (nots.isEmpty) posted -= toNotificationGroupId(userId)
+
       val allBeenDisplayed = nots.forall(_.hasBeenDisplayed)
 
       getPictureForNotifications(userId, nots).map { pic =>
@@ -240,12 +288,18 @@ class MessageNotificationsController(implicit inj: Injector, cxt: Context, event
             getMultipleMessagesNotification(userId, nots, silent, noTicker = allBeenDisplayed, teamName, pic)
 
           publishNotification(None, notification)
+          true
         } else {
           notManager.cancel(toNotificationGroupId(userId))
+          false
         }
+      } flatMap { published =>
+        if (published) markPosted(toNotificationGroupId(userId), (contentOf(nots), silent, teamName)) else Future.successful(())
       }
     }
 
+    verbose(s"publish stats: $publishStats")
+
     publishFuture.map { _ =>
       Option(ZMessaging.currentGlobal.notifications.markAsDisplayed(userId, nots.map(_.id)))
     }
@@ -498,6 +552,16 @@ object MessageNotificationsController {
   def toNotificationConvId(userId: UserId, convId: ConvId): Int = (userId.str + convId.str).hashCode()
   def channelId(userId: UserId): String = userId.str
 
+  /**
+    * @param rebuilt number of notifications which had to be built and posted again
+    * @param skipped number of notifications which were not posted, as their content didn't change
+    * @param cancelled number of stale notifications cancelled
+    */
+  case class PublishStats(rebuilt: Int, skipped: Int, cancelled: Int)
+
+  // summary notifications are only posted once, we track them just to cancel them when they are gone
+  case object SummaryContent
+
   val ZETA_MESSAGE_NOTIFICATION_ID: Int = 1339272
   val ZETA_EPHEMERAL_NOTIFICATION_ID: Int = 1339279
   val BundleEnabled = Build.VERSION.SDK_INT > Build.VERSION_CODES.M
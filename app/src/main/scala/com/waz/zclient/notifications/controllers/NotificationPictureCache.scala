@@ -0,0 +1,105 @@
+/**
+ * Wire
+ * Copyright (C) 2018 Wire Swiss GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.waz.zclient.notifications.controllers
+
+import android.content.{ComponentCallbacks2, Context}
+import android.content.res.Configuration
+import android.graphics.Color
+import android.util.LruCache
+import com.waz.ZLog.ImplicitTag._
+import com.waz.ZLog.verbose
+import com.waz.bitmap.BitmapUtils
+import com.waz.model._
+import com.waz.service.ZMessaging
+import com.waz.threading.{CancellableFuture, SerialDispatchQueue}
+import com.waz.ui.MemoryImageCache.BitmapRequest
+import com.waz.utils.returning
+import com.waz.utils.wrappers.Bitmap
+import com.waz.zclient.notifications.controllers.NotificationPictureCache._
+
+import scala.concurrent.Future
+import scala.concurrent.duration._
+
+/**
+  * Keeps round, ready to use notification icons of message senders.
+  *
+  * Notification bursts usually come from the same few users, so we don't want to load and round their pictures again
+  * for every `groupedNotifications` update. Entries are keyed by picture asset and icon size, pictures of conversation
+  * members are loaded in advance when a conversation is opened, and the cache is trimmed when system is low on memory.
+  */
+class NotificationPictureCache(implicit context: Context) {
+
+  private implicit val dispatcher = new SerialDispatchQueue(name = "NotificationPictureCache")
+
+  // android LruCache is synchronized, so it's safe to use it from ui and background threads
+  private val cache = new LruCache[(AssetId, Int), Bitmap](MaxEntries)
+
+  context.registerComponentCallbacks(new ComponentCallbacks2 {
+    override def onTrimMemory(level: Int): Unit = level match {
+      case l if l >= ComponentCallbacks2.TRIM_MEMORY_MODERATE || l == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL =>
+        verbose(s"onTrimMemory($level), evicting all notification pictures")
+        cache.evictAll()
+      case l if l >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW =>
+        cache.trimToSize(MaxEntries / 2)
+      case _ =>
+    }
+
+    override def onLowMemory(): Unit = cache.evictAll()
+
+    override def onConfigurationChanged(newConfig: Configuration): Unit = ()
+  })
+
+  /**
+    * Returns cached icon or loads and rounds it, loading is given up after `LoadTimeout`.
+    */
+  def get(zms: ZMessaging, picture: AssetId, iconWidth: Int): Future[Option[Bitmap]] =
+    Option(cache.get((picture, iconWidth))) match {
+      case Some(bitmap) => Future.successful(Some(bitmap))
+      case None => load(zms, picture, iconWidth).withTimeout(LoadTimeout).recoverWith {
+        case _: Throwable => CancellableFuture.successful(None)
+      }.future
+    }
+
+  /**
+    * Loads icons of other active members of given conversation, so that their notifications can be posted immediately.
+    */
+  def warmUp(zms: ZMessaging, conv: ConvId, iconWidth: Int): Future[Unit] =
+    for {
+      members <- zms.membersStorage.getByConvs(Set(conv))
+      users   <- zms.usersStorage.getAll(members.map(_.userId).filter(_ != zms.selfUserId).take(MaxWarmedMembers))
+      missing = users.flatten.flatMap(_.picture).filter(id => cache.get((id, iconWidth)) == null)
+      _       <- Future.traverse(missing)(load(zms, _, iconWidth).future)
+    } yield verbose(s"warmed up ${missing.size} notification pictures for $conv")
+
+  private def load(zms: ZMessaging, picture: AssetId, iconWidth: Int): CancellableFuture[Option[Bitmap]] =
+    CancellableFuture.lift(zms.assetsStorage.get(picture)) flatMap {
+      case Some(asset) =>
+        zms.imageLoader.loadBitmap(asset, BitmapRequest.Single(iconWidth), forceDownload = false) map { original =>
+          Option(original) map { bmp =>
+            returning(BitmapUtils.createRoundBitmap(bmp, iconWidth, 0, Color.TRANSPARENT)) { round => cache.put((picture, iconWidth), round) }
+          }
+        }
+      case None => CancellableFuture.successful(None)
+    }
+}
+
+object NotificationPictureCache {
+  val MaxEntries = 16
+  val MaxWarmedMembers = 8
+  val LoadTimeout = 500.millis
+}
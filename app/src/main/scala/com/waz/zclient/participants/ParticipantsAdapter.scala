@@ -40,7 +40,7 @@ import com.waz.zclient.paintcode.{ForwardNavigationIcon, GuestIconWithColor}
 import com.waz.zclient.ui.text.TypefaceEditText.OnSelectionChangedListener
 import com.waz.zclient.ui.text.{GlyphTextView, TypefaceEditText}
 import com.waz.zclient.utils.ContextUtils._
-import com.waz.zclient.utils.{ContextUtils, RichView, ViewUtils}
+import com.waz.zclient.utils.{ContextUtils, RichView, UiStorage, UsersSignal, ViewUtils}
 import com.waz.zclient.{Injectable, Injector, R}
 
 import scala.concurrent.duration._
@@ -53,6 +53,7 @@ class ParticipantsAdapter(numOfColumns: Int)(implicit context: Context, injector
   private lazy val participantsController = inject[ParticipantsController]
   private lazy val convController         = inject[ConversationController]
   private lazy val themeController        = inject[ThemeController]
+  private implicit lazy val uiStorage     = inject[UiStorage]
 
   private var items        = List.empty[Either[ParticipantData, Int]]
   private var teamId       = Option.empty[TeamId]
@@ -67,8 +68,8 @@ class ParticipantsAdapter(numOfColumns: Int)(implicit context: Context, injector
 
   lazy val users = for {
     z       <- zms
-    userIds <- participantsController.otherParticipants.map(_.toSeq)
-    users   <- Signal.sequence(userIds.filterNot(_ == z.selfUserId).map(z.users.userSignal): _*)
+    userIds <- participantsController.otherParticipants
+    users   <- UsersSignal(userIds.toSet - z.selfUserId).map(_.values.toSeq)
   } yield users.map(u => ParticipantData(u, u.isGuest(z.teamId) && !u.isWireBot)).sortBy(_.userData.getDisplayName)
 
   private val shouldShowGuestButton = inject[ConversationController].currentConv.map(_.accessRole.isDefined)
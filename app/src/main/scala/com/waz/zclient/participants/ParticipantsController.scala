@@ -28,7 +28,7 @@ import com.waz.zclient.controllers.confirmation.{ConfirmationRequest, IConfirmat
 import com.waz.zclient.conversation.ConversationController
 import com.waz.zclient.pages.main.conversation.controller.IConversationScreenController
 import com.waz.zclient.utils.ContextUtils._
-import com.waz.zclient.utils.{UiStorage, UserSignal}
+import com.waz.zclient.utils.{UiStorage, UserSignal, UsersSignal}
 import com.waz.zclient.{Injectable, Injector, R}
 
 import scala.concurrent.Future
@@ -67,14 +67,14 @@ class ParticipantsController(implicit injector: Injector, context: Context, ec:
     z     <- zms
     ids   <- otherParticipants
     isGroup <- convController.currentConvIsGroup
-    users <- Signal.sequence(ids.map(z.users.userSignal).toSeq:_*)
-  } yield isGroup && users.exists(_.isGuest(z.teamId))
+    users <- UsersSignal(ids.toSet)
+  } yield isGroup && users.valuesIterator.exists(_.isGuest(z.teamId))
 
   lazy val isWithBot = for {
     z       <- zms
     others  <- otherParticipants
-    withBot <- Signal.sequence(others.map(id => z.users.userSignal(id).map(_.isWireBot)).toSeq: _*)
-  } yield withBot.contains(true)
+    users   <- UsersSignal(others.toSet)
+  } yield users.valuesIterator.exists(_.isWireBot)
 
   lazy val isGroupOrBot = for {
     group      <- isGroup
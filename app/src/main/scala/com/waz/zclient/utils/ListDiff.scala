@@ -0,0 +1,233 @@
+/**
+ * Wire
+ * Copyright (C) 2018 Wire Swiss GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.waz.zclient.utils
+
+/**
+  * Minimal list change notifications for RecyclerView adapters backed by immutable lists with stable item keys.
+  */
+object ListDiff {
+
+  object Op {
+    val Insert = 1
+    val Remove = 2
+    val Move   = 3
+    val Change = 4
+  }
+
+  /**
+    * Batch of notifications, ops are stored as (op, a, b) triples in a flat int array to avoid allocations per change.
+    * For inserts, removals and changes `a` is the index and `b` the number of items, for moves those are `from` and `to` positions.
+    * Positions are relative to the list state after all previous ops in the batch were applied, this is what RecyclerView expects.
+    */
+  final class Changes {
+    private var ops = new Array[Int](3 * 8)
+    private var length = 0
+
+    var inserted = 0
+    var removed  = 0
+    var moved    = 0
+    var changed  = 0
+
+    def count = inserted + removed + moved + changed
+
+    def isEmpty = length == 0
+
+    def size = length / 3
+
+    def apply(i: Int) = (ops(3 * i), ops(3 * i + 1), ops(3 * i + 2))
+
+    def foreach(f: ((Int, Int, Int)) => Unit): Unit = {
+      var i = 0
+      while (i < length) {
+        f((ops(i), ops(i + 1), ops(i + 2)))
+        i += 3
+      }
+    }
+
+    private def last(op: Int) = length > 0 && ops(length - 3) == op
+
+    private def append(op: Int, a: Int, b: Int) = {
+      if (length == ops.length) ops = java.util.Arrays.copyOf(ops, ops.length * 2)
+      ops(length) = op
+      ops(length + 1) = a
+      ops(length + 2) = b
+      length += 3
+    }
+
+    def insert(index: Int): Unit = {
+      inserted += 1
+      if (last(Op.Insert) && ops(length - 2) + ops(length - 1) == index) ops(length - 1) += 1
+      else append(Op.Insert, index, 1)
+    }
+
+    // removals are always reported from the end of the list, so consecutive items are merged when going backwards
+    def remove(index: Int): Unit = {
+      removed += 1
+      if (last(Op.Remove) && ops(length - 2) == index + 1) {
+        ops(length - 2) = index
+        ops(length - 1) += 1
+      }
+      else append(Op.Remove, index, 1)
+    }
+
+    def move(from: Int, to: Int): Unit = {
+      moved += 1
+      append(Op.Move, from, to)
+    }
+
+    def change(index: Int): Unit = {
+      changed += 1
+      if (last(Op.Change) && ops(length - 2) + ops(length - 1) == index) ops(length - 1) += 1
+      else append(Op.Change, index, 1)
+    }
+  }
+
+  private val NoChange: (Any, Any) => Boolean = (_, _) => false
+
+  /**
+    * Computes changes needed to transform `from` list into `to` list, items are matched by their (unique) keys.
+    *
+    * Removed items are reported first (from the end, so indices don't shift), then items which changed their relative order
+    * are moved to their new place, and finally new items are inserted. Items kept in place are found with longest increasing subsequence
+    * of their new positions, so a single reordered item generates a single move, instead of re-binding whole range.
+    * Kept items for which `changed` returns true are reported last, with their final positions.
+    *
+    * Runs in O(n log n + n * m) for n items with m of them moved, which is cheap as long as only a few items move at once.
+    */
+  def apply[A, K](from: IndexedSeq[A], to: IndexedSeq[A])(key: A => K, changed: (A, A) => Boolean = NoChange): Changes = {
+    val changes = new Changes
+
+    val newIndex = new java.util.HashMap[K, Integer](to.length * 2)
+    var i = 0
+    while (i < to.length) {
+      newIndex.put(key(to(i)), i)
+      i += 1
+    }
+
+    // target position of every entry still present after removals, in current order
+    val kept = new Array[Int](from.length)
+    var keptCount = 0
+    val targets = new Array[Int](from.length)
+    i = 0
+    while (i < from.length) {
+      val t = newIndex.get(key(from(i)))
+      targets(i) = if (t == null) -1 else t.intValue
+      i += 1
+    }
+    i = from.length - 1
+    while (i >= 0) {
+      if (targets(i) < 0) changes.remove(i)
+      i -= 1
+    }
+    i = 0
+    while (i < from.length) {
+      if (targets(i) >= 0) {
+        kept(keptCount) = targets(i)
+        keptCount += 1
+      }
+      i += 1
+    }
+
+    val stable = longestIncreasing(kept, keptCount)
+
+    // current list state (target positions), moves are applied to it to compute proper indices
+    val current = java.util.Arrays.copyOf(kept, keptCount)
+    val placed = new Array[Boolean](to.length)
+    i = 0
+    while (i < keptCount) {
+      if (stable(i)) placed(kept(i)) = true
+      i += 1
+    }
+
+    // move remaining entries in order of their target position, right after last placed entry which should precede them
+    val moving = (0 until keptCount).filterNot(stable(_)).map(kept(_)).sorted
+    moving foreach { target =>
+      val fromPos = indexOf(current, keptCount, target)
+      System.arraycopy(current, fromPos + 1, current, fromPos, keptCount - fromPos - 1)
+      var toPos = 0
+      var j = keptCount - 2
+      while (j >= 0 && toPos == 0) {
+        if (placed(current(j)) && current(j) < target) toPos = j + 1
+        j -= 1
+      }
+      System.arraycopy(current, toPos, current, toPos + 1, keptCount - toPos - 1)
+      current(toPos) = target
+      placed(target) = true
+      if (fromPos != toPos) changes.move(fromPos, toPos)
+    }
+
+    // at this point all kept entries are in target order, so inserting new ones at their target index gives final state
+    i = 0
+    while (i < to.length) {
+      if (!placed(i)) changes.insert(i)
+      i += 1
+    }
+
+    if (changed ne NoChange) {
+      val modified = new Array[Boolean](to.length)
+      i = 0
+      while (i < from.length) {
+        if (targets(i) >= 0 && changed(from(i), to(targets(i)))) modified(targets(i)) = true
+        i += 1
+      }
+      i = 0
+      while (i < to.length) {
+        if (modified(i)) changes.change(i)
+        i += 1
+      }
+    }
+
+    changes
+  }
+
+  private def indexOf(arr: Array[Int], length: Int, value: Int) = {
+    var i = 0
+    while (i < length && arr(i) != value) i += 1
+    i
+  }
+
+  /**
+    * Marks elements belonging to the longest strictly increasing subsequence of `values` (patience sorting).
+    */
+  private[utils] def longestIncreasing(values: Array[Int], length: Int): Array[Boolean] = {
+    val tails = new Array[Int](length) // index of smallest tail element for subsequence of length k + 1
+    val prev = new Array[Int](length)
+    var len = 0
+    var i = 0
+    while (i < length) {
+      var lo = 0
+      var hi = len
+      while (lo < hi) {
+        val mid = (lo + hi) >>> 1
+        if (values(tails(mid)) < values(i)) lo = mid + 1 else hi = mid
+      }
+      prev(i) = if (lo > 0) tails(lo - 1) else -1
+      tails(lo) = i
+      if (lo == len) len += 1
+      i += 1
+    }
+
+    val res = new Array[Boolean](length)
+    var k = if (len > 0) tails(len - 1) else -1
+    while (k >= 0) {
+      res(k) = true
+      k = prev(k)
+    }
+    res
+  }
+}
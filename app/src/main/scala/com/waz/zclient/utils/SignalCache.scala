@@ -0,0 +1,91 @@
+/**
+ * Wire
+ * Copyright (C) 2018 Wire Swiss GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.waz.zclient.utils
+
+import com.waz.ZLog.ImplicitTag._
+import com.waz.ZLog._
+import com.waz.utils.events.Signal
+import com.waz.zclient.BuildConfig
+import com.waz.zclient.utils.SignalCache.CacheStats
+
+import scala.collection.JavaConverters._
+
+/**
+  * Cache of shared signals, entries are never evicted while their signal has subscribers.
+  *
+  * Only idle entries (no one is subscribed to them at the moment) are limited by `idleCapacity`,
+  * least recently used of those are evicted first. This way screens showing many items can use as many
+  * signals as they need, without evicting and re-creating them on every access.
+  */
+class SignalCache[K, V](name: String, idleCapacity: Int)(load: K => Signal[V]) {
+
+  // access ordered, so iteration starts from least recently used entries
+  private val entries = new java.util.LinkedHashMap[K, Signal[V]](16, .75f, true)
+
+  private var hits = 0
+  private var misses = 0
+  private var evictions = 0
+
+  def apply(key: K): Signal[V] = synchronized {
+    Option(entries.get(key)) match {
+      case Some(signal) =>
+        hits += 1
+        signal
+      case None =>
+        misses += 1
+        val signal = load(key)
+        entries.put(key, signal)
+        trim()
+        if (BuildConfig.DEBUG && misses % SignalCache.LogInterval == 0) verbose(s"$name cache: ${stats}")
+        signal
+    }
+  }
+
+  def stats: CacheStats = synchronized {
+    CacheStats(hits, misses, evictions, entries.size, entries.values.asScala.count(_.hasSubscribers))
+  }
+
+  private def trim(): Unit = if (entries.size > idleCapacity) {
+    var idle = entries.values.asScala.count(!_.hasSubscribers)
+    val it = entries.values.iterator()
+    while (idle > idleCapacity && it.hasNext) {
+      if (!it.next().hasSubscribers) {
+        it.remove()
+        idle -= 1
+        evictions += 1
+      }
+    }
+  }
+}
+
+object SignalCache {
+
+  val LogInterval = 100
+
+  /**
+    * @param pinned number of entries with active subscribers
+    */
+  case class CacheStats(hits: Int, misses: Int, evictions: Int, size: Int, pinned: Int) {
+    override def toString: String = s"hits: $hits, misses: $misses, evictions: $evictions, size: $size, pinned: $pinned"
+  }
+
+  /**
+    * Idle capacity scaled with memory class, `base` is used for 64MB devices.
+    */
+  def idleCapacity(base: Int, memoryClass: Int): Int = base * math.max(1, memoryClass / 64)
+}
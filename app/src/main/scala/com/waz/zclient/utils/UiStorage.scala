@@ -17,11 +17,12 @@
  */
 package com.waz.zclient.utils
 
-import android.util.LruCache
+import android.app.ActivityManager
 import com.waz.model._
 import com.waz.service.ZMessaging
-import com.waz.utils.events.Signal
-import com.waz.utils.returning
+import com.waz.threading.Threading
+import com.waz.utils.events.{AggregatingSignal, Signal}
+import com.waz.zclient.utils.SignalCache.{CacheStats, idleCapacity}
 import com.waz.zclient.{Injectable, Injector}
 import com.waz.zclient.utils.UiStorage._
 
@@ -31,16 +32,45 @@ class UiStorage(implicit inj: Injector) extends Injectable {
 
   private val zms = inject[Signal[ZMessaging]]
 
-  val userCache = new LruCache[UserId, Signal[UserData]](UserCacheSize)
-  val conversationCache = new LruCache[ConvId, Signal[ConversationData]](ConversationCacheSize)
-  val conversationMembersCache = new LruCache[ConvId, Signal[Set[UserId]]](ConversationMembersCacheSize)
+  private lazy val memoryClass = inject[ActivityManager].getMemoryClass
+
+  val userCache = new SignalCache[UserId, UserData]("users", idleCapacity(UserCacheSize, memoryClass))(loadUser)
+  val conversationCache = new SignalCache[ConvId, ConversationData]("conversations", idleCapacity(ConversationCacheSize, memoryClass))(loadConversation)
+  val conversationMembersCache = new SignalCache[ConvId, Set[UserId]]("members", idleCapacity(ConversationMembersCacheSize, memoryClass))(loadConversationMembers)
 
   def loadUser(userId: UserId) = zms.flatMap(_.usersStorage.signal(userId))
   def loadConversation(conversationId: ConvId) = zms.flatMap(_.convsStorage.signal(conversationId))
   def loadConversationMembers(conversationId: ConvId) = zms.flatMap(_.membersStorage.activeMembers(conversationId).map(_.toSet))
+
+  /**
+    * Loads all users with a single storage query and then only applies storage change sets
+    * touching those users, instead of subscribing to separate signal for every single user.
+    * Users missing in local storage are requested from backend, they are added to the result once synced.
+    */
+  def loadUsers(ids: Set[UserId]): Signal[Map[UserId, UserData]] = zms.flatMap { z =>
+    import Threading.Implicits.Background
+    val changes = z.usersStorage.onChanged.map(_.filter(u => ids.contains(u.id))).filter(_.nonEmpty)
+    val loaded = z.usersStorage.getAll(ids.toSeq).map(_.flatten.map(u => u.id -> u).toMap) map { users =>
+      val missing = ids -- users.keySet
+      if (missing.nonEmpty) z.sync.syncUsers(missing.toSeq: _*)
+      users
+    }
+    new AggregatingSignal[Seq[UserData], Map[UserId, UserData]](
+      changes,
+      loaded,
+      { (users, changed) => users ++ changed.map(u => u.id -> u) }
+    )
+  }
+
+  def stats: Map[String, CacheStats] = Map(
+    "users"         -> userCache.stats,
+    "conversations" -> conversationCache.stats,
+    "members"       -> conversationMembersCache.stats
+  )
 }
 
 object UiStorage {
+  // idle capacities on devices with 64MB memory class, scaled up on devices with more memory
   val UserCacheSize = 20
   val ConversationCacheSize = 25
   val ConversationMembersCacheSize = 20
@@ -48,24 +78,31 @@ object UiStorage {
 
 object UserSignal {
   def apply(userId: UserId)(implicit uiStorage: UiStorage): Signal[UserData] = {
-    Option(uiStorage.userCache.get(userId)).getOrElse(returning(uiStorage.loadUser(userId))(uiStorage.userCache.put(userId, _)))
+    uiStorage.userCache(userId)
   }
 }
 
 object ConversationSignal {
   def apply(conversationId: ConvId)(implicit uiStorage: UiStorage): Signal[ConversationData] = {
-    Option(uiStorage.conversationCache.get(conversationId)).getOrElse(returning(uiStorage.loadConversation(conversationId))(uiStorage.conversationCache.put(conversationId, _)))
+    uiStorage.conversationCache(conversationId)
   }
 }
 
 object ConversationMembersSignal {
   def apply(conversationId: ConvId)(implicit uiStorage: UiStorage): Signal[Set[UserId]] = {
-    Option(uiStorage.conversationMembersCache.get(conversationId)).getOrElse(returning(uiStorage.loadConversationMembers(conversationId))(uiStorage.conversationMembersCache.put(conversationId, _)))
+    uiStorage.conversationMembersCache(conversationId)
+  }
+}
+
+object UsersSignal {
+  def apply(ids: Set[UserId])(implicit uiStorage: UiStorage): Signal[Map[UserId, UserData]] = {
+    if (ids.isEmpty) Signal.const(Map.empty[UserId, UserData])
+    else uiStorage.loadUsers(ids)
   }
 }
 
 object UserSetSignal {
   def apply(ids: Set[UserId])(implicit uiStorage: UiStorage): Signal[Set[UserData]] = {
-    Signal.sequence(ids.map(id => UserSignal(id)).toSeq:_*).map(_.toSet)
+    UsersSignal(ids).map(_.values.toSet)
   }
 }
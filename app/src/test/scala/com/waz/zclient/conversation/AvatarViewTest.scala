@@ -17,11 +17,16 @@
  */
 package com.waz.zclient.conversation
 
+import java.util.UUID
+
 import com.waz.model.ConvId
 import com.waz.zclient.conversationlist.views.ConversationAvatarView
 import org.junit.Test
 import org.scalatest.junit.JUnitSuite
 
+import scala.collection.mutable.ArrayBuffer
+import scala.util.Random
+
 class AvatarViewTest extends JUnitSuite {
 
   @Test
@@ -51,4 +56,43 @@ class AvatarViewTest extends JUnitSuite {
     val shuffled2 = ConversationAvatarView.shuffle(seq, ConvId("E621E1F8-C36C-495A-93FC-0C247A3E6E5F"))
     assert(shuffled1 == shuffled2)
   }
+
+  @Test
+  def unsignedRemainder(): Unit = {
+    val rand = new Random(1)
+    (0 until 10000) foreach { _ =>
+      val value = rand.nextLong()
+      val max = 1 + rand.nextInt(Int.MaxValue).toLong
+      val unsigned = if (value < 0) BigInt(value) + (BigInt(1) << 64) else BigInt(value)
+      val expected = (unsigned mod BigInt(max)).longValue()
+      assert(ConversationAvatarView.unsignedRemainder(value, max) == expected)
+    }
+  }
+
+  @Test
+  def shuffleMatchesBigIntImplementation(): Unit = {
+    val rand = new Random(2)
+    (0 until 2000) foreach { _ =>
+      val convId = ConvId(new UUID(rand.nextLong(), rand.nextLong()).toString)
+      val seq = (0 until rand.nextInt(40)).map(_.toString)
+      assert(ConversationAvatarView.shuffle(seq, convId) == AvatarViewTest.bigIntShuffle(seq, convId))
+    }
+  }
+}
+
+object AvatarViewTest {
+
+  // original implementation, kept to verify that the primitive one gives the same results
+  def bigIntShuffle[T](seq: Seq[T], convId: ConvId): Seq[T] = {
+    val uuid = UUID.fromString(convId.str)
+    val bits = Seq(uuid.getMostSignificantBits, uuid.getLeastSignificantBits).map(ConversationAvatarView.longToUnsignedLongLittleEndian)
+    val input = new ArrayBuffer[T] ++= seq
+    val output = new ArrayBuffer[T]
+    seq.indices foreach { step =>
+      val idx = (bits(step % 2) mod BigInt(input.size)).toInt
+      output += input(idx)
+      input.remove(idx)
+    }
+    output
+  }
 }
@@ -0,0 +1,81 @@
+/**
+ * Wire
+ * Copyright (C) 2018 Wire Swiss GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.waz.zclient.conversationlist
+
+import com.waz.model.ConversationData.ConversationType
+import com.waz.model.{ConvId, ConversationData, RConvId, UserId}
+import com.waz.zclient.conversationlist.ConversationListAdapter.{Archive, Normal}
+import com.waz.zclient.conversationlist.ConversationListIndex.SortedIndex
+import org.junit.Test
+import org.scalatest.junit.JUnitSuite
+import org.threeten.bp.Instant
+
+import scala.util.Random
+
+class ConversationListIndexTest extends JUnitSuite {
+
+  private val rand = new Random(42)
+  private val types = Seq(ConversationType.OneToOne, ConversationType.Group, ConversationType.Incoming, ConversationType.WaitForConnection)
+
+  private def randomConv(id: ConvId = ConvId()) =
+    ConversationData(id, RConvId(), Some(id.str), UserId(), types(rand.nextInt(types.size)),
+      lastEventTime = Instant.ofEpochMilli(rand.nextInt(20).toLong), // lots of equal times, to check ties
+      archived = rand.nextInt(4) == 0)
+
+  @Test
+  def incrementalUpdatesMatchFullSort(): Unit = {
+    val normal = new SortedIndex(Normal)
+    val archive = new SortedIndex(Archive)
+    var convs = Map.empty[ConvId, ConversationData]
+
+    (0 until 2000) foreach { _ =>
+      val op = rand.nextInt(10)
+      if (op == 0 && convs.nonEmpty) {
+        val id = convs.keys.toSeq(rand.nextInt(convs.size))
+        convs -= id
+        normal.remove(id)
+        archive.remove(id)
+      } else {
+        val conv = if (op < 5 && convs.nonEmpty) randomConv(convs.keys.toSeq(rand.nextInt(convs.size))) else randomConv()
+        convs += conv.id -> conv
+        normal.update(conv)
+        archive.update(conv)
+      }
+
+      // only order of conversations with different sort keys is defined, so compare contents and check ordering
+      Seq(normal, archive) foreach { index =>
+        val expected = convs.values.filter(index.mode.filter).toSet
+        val actual = index.toVector
+        assert(actual.size == expected.size && actual.toSet == expected)
+        assert(actual.sliding(2).forall { case Seq(a, b) => index.mode.sort.compare(a, b) <= 0 case _ => true })
+      }
+    }
+  }
+
+  @Test
+  def nextConversation(): Unit = {
+    val index = new SortedIndex(Normal)
+    val convs = (0 until 3).map(i => ConversationData(ConvId(), RConvId(), None, UserId(), ConversationType.Group, lastEventTime = Instant.ofEpochMilli(i)))
+    convs foreach index.update
+
+    val sorted = index.toVector
+    assert(index.next(sorted(0).id) == Some(sorted(1)))
+    assert(index.next(sorted(2).id) == None)
+    assert(index.next(ConvId()) == Some(sorted(0))) // missing conversation, returns first
+  }
+}
@@ -0,0 +1,83 @@
+/**
+ * Wire
+ * Copyright (C) 2018 Wire Swiss GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.waz.zclient.messages
+
+import com.waz.api.Message
+import com.waz.content.MessagesCursor.Entry
+import com.waz.model.{ConvId, MessageData, MessageId, UserId}
+import com.waz.zclient.messages.IndexWindow.Op
+import org.junit.Test
+import org.scalatest.junit.JUnitSuite
+import org.threeten.bp.Instant
+
+import scala.collection.mutable.ArrayBuffer
+
+class IndexWindowTest extends JUnitSuite {
+
+  private def entries(ids: String*) = ids.zipWithIndex.map { case (id, i) =>
+    Entry(MessageData(MessageId(id), ConvId("conv"), Message.Type.TEXT, UserId("user"), time = Instant.ofEpochMilli(i)))
+  }.toArray
+
+  // replays generated notifications on a list, the same way RecyclerView would
+  private def replay(from: Seq[String], to: Seq[String]) = {
+    val changes = IndexWindow.diff(entries(from: _*), entries(to: _*))
+    val list = ArrayBuffer(from: _*)
+    changes foreach {
+      case (Op.Remove, index, count) => list.remove(index, count)
+      case (Op.Move, f, t)           => list.insert(t, list.remove(f))
+      case (Op.Insert, index, count) => list.insertAll(index, to.slice(index, index + count))
+      case _ =>
+    }
+    (list.toSeq, changes)
+  }
+
+  @Test
+  def insertsAndRemovalsAreBatched(): Unit = {
+    val from = Seq("a", "b", "c", "d", "e")
+    val to = Seq("a", "d", "e", "f", "g")
+    val (res, changes) = replay(from, to)
+    assert(res == to)
+    assert(changes.size == 2)
+    assert(changes.inserted == 2 && changes.removed == 2 && changes.moved == 0)
+  }
+
+  @Test
+  def singleReorderedMessageGeneratesSingleMove(): Unit = {
+    val from = Seq("a", "b", "c", "d", "e", "f")
+    val to = Seq("b", "c", "d", "e", "f", "a")
+    val (res, changes) = replay(from, to)
+    assert(res == to)
+    assert(changes.size == 1 && changes.moved == 1)
+  }
+
+  @Test
+  def mixedChangesProduceTargetList(): Unit = {
+    val from = Seq("a", "b", "c", "d", "e", "f", "g")
+    val to = Seq("x", "c", "a", "f", "y", "e", "b", "z")
+    val (res, _) = replay(from, to)
+    assert(res == to)
+  }
+
+  @Test
+  def noChanges(): Unit = {
+    val ids = Seq("a", "b", "c")
+    val (res, changes) = replay(ids, ids)
+    assert(res == ids)
+    assert(changes.isEmpty)
+  }
+}
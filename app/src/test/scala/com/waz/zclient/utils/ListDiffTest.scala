@@ -0,0 +1,67 @@
+/**
+ * Wire
+ * Copyright (C) 2018 Wire Swiss GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.waz.zclient.utils
+
+import com.waz.zclient.utils.ListDiff.Op
+import org.junit.Test
+import org.scalatest.junit.JUnitSuite
+
+import scala.collection.mutable.ArrayBuffer
+
+class ListDiffTest extends JUnitSuite {
+
+  // (key, content) pairs
+  private def diff(from: Seq[(String, Int)], to: Seq[(String, Int)]) =
+    ListDiff(from.toIndexedSeq, to.toIndexedSeq)(_._1, _._2 != _._2)
+
+  @Test
+  def changedItemsAreReportedAtFinalPositions(): Unit = {
+    val from = Seq("a" -> 1, "b" -> 1, "c" -> 1, "d" -> 1)
+    val to = Seq("x" -> 1, "c" -> 2, "a" -> 1, "b" -> 2, "d" -> 1)
+    val changes = diff(from, to)
+
+    val list = ArrayBuffer(from: _*)
+    val changed = ArrayBuffer.empty[Int]
+    changes foreach {
+      case (Op.Remove, index, count) => list.remove(index, count)
+      case (Op.Move, f, t)           => list.insert(t, list.remove(f))
+      case (Op.Insert, index, count) => list.insertAll(index, to.slice(index, index + count))
+      case (Op.Change, index, count) =>
+        changed ++= index until index + count
+        (index until index + count) foreach { i => list(i) = to(i) }
+      case _ =>
+    }
+
+    assert(list == to)
+    assert(changed.map(to(_)._1) == Seq("c", "b"))
+    assert(changes.changed == 2 && changes.inserted == 1 && changes.removed == 0)
+  }
+
+  @Test
+  def consecutiveChangesAreMerged(): Unit = {
+    val changes = diff(Seq("a" -> 1, "b" -> 1, "c" -> 1), Seq("a" -> 2, "b" -> 2, "c" -> 1))
+    assert(changes.size == 1)
+    assert(changes(0) == (Op.Change, 0, 2))
+  }
+
+  @Test
+  def contentIsIgnoredWithoutChangePredicate(): Unit = {
+    val changes = ListDiff(IndexedSeq("a" -> 1, "b" -> 1), IndexedSeq("a" -> 2, "b" -> 2))(_._1)
+    assert(changes.isEmpty)
+  }
+}
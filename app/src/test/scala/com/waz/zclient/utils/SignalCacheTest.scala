@@ -0,0 +1,65 @@
+/**
+ * Wire
+ * Copyright (C) 2018 Wire Swiss GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.waz.zclient.utils
+
+import com.waz.utils.events.{EventContext, Signal}
+import org.junit.Test
+import org.scalatest.junit.JUnitSuite
+
+class SignalCacheTest extends JUnitSuite {
+
+  implicit val eventContext = EventContext.Implicits.global
+
+  @Test
+  def subscribedEntriesAreNotEvicted(): Unit = {
+    val cache = new SignalCache[Int, Int]("test", 2)(i => Signal(i))
+
+    val pinned = cache(0)
+    val sub = pinned { _ => }
+
+    (1 to 5) foreach (cache(_))
+
+    assert(cache(0) eq pinned)
+    val stats = cache.stats
+    assert(stats.size == 3 && stats.pinned == 1)
+    assert(stats.evictions == 3)
+    assert(stats.hits == 1 && stats.misses == 6)
+
+    sub.destroy()
+  }
+
+  @Test
+  def leastRecentlyUsedIdleEntryIsEvicted(): Unit = {
+    val cache = new SignalCache[Int, Int]("test", 2)(i => Signal(i))
+
+    val first = cache(1)
+    cache(2)
+    cache(1)
+    cache(3)
+
+    assert(cache(1) eq first)
+    assert(cache.stats.evictions == 1)
+  }
+
+  @Test
+  def idleCapacityScalesWithMemoryClass(): Unit = {
+    assert(SignalCache.idleCapacity(20, 32) == 20)
+    assert(SignalCache.idleCapacity(20, 64) == 20)
+    assert(SignalCache.idleCapacity(20, 256) == 80)
+  }
+}
@@ -0,0 +1,67 @@
+/**
+ * Wire
+ * Copyright (C) 2018 Wire Swiss GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.waz.zclient.benchmarks
+
+import java.util.concurrent.TimeUnit
+
+import java.util.UUID
+
+import com.waz.model.{ConvId, UserId}
+import com.waz.zclient.conversationlist.views.ConversationAvatarView
+import org.openjdk.jmh.annotations._
+
+import scala.collection.mutable.ArrayBuffer
+
+/**
+  * Stable members shuffle used for group avatars, computed for every conversation on members change.
+  */
+@State(Scope.Benchmark)
+@BenchmarkMode(Array(Mode.AverageTime))
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+class AvatarShuffleBenchmark {
+
+  @Param(Array("4", "16", "64"))
+  var members: Int = _
+
+  val convId = ConvId("E621E1F8-C36C-495A-93FC-0C247A3E6E5F")
+  var users: Seq[UserId] = _
+
+  @Setup
+  def setup(): Unit = users = (0 until members).map(_ => UserId())
+
+  @Benchmark
+  def shuffle(): Seq[UserId] = ConversationAvatarView.shuffle(users, convId)
+
+  @Benchmark
+  def shuffleTake4(): Seq[UserId] = ConversationAvatarView.shuffle(users, convId).take(4)
+
+  // previous implementation, using BigInt modulo for every step
+  @Benchmark
+  def bigIntShuffle(): Seq[UserId] = {
+    val uuid = UUID.fromString(convId.str)
+    val bits = Seq(uuid.getMostSignificantBits, uuid.getLeastSignificantBits).map(ConversationAvatarView.longToUnsignedLongLittleEndian)
+    val input = new ArrayBuffer[UserId] ++= users
+    val output = new ArrayBuffer[UserId]
+    users.indices foreach { step =>
+      val idx = (bits(step % 2) mod BigInt(input.size)).toInt
+      output += input(idx)
+      input.remove(idx)
+    }
+    output
+  }
+}
@@ -0,0 +1,66 @@
+/**
+ * Wire
+ * Copyright (C) 2018 Wire Swiss GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.waz.zclient.benchmarks
+
+import java.util.concurrent.TimeUnit
+
+import com.waz.model.ConversationData.ConversationType
+import com.waz.model.{ConvId, ConversationData, RConvId, UserId}
+import com.waz.zclient.conversationlist.ConversationListController._
+import org.openjdk.jmh.annotations._
+import org.threeten.bp.Instant
+
+import scala.util.Random
+
+/**
+  * Filtering and sorting done by ConversationListController for every conversations list update.
+  */
+@State(Scope.Benchmark)
+@BenchmarkMode(Array(Mode.AverageTime))
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+class ConversationListBenchmark {
+
+  @Param(Array("50", "500", "2000"))
+  var count: Int = _
+
+  var conversations: Set[ConversationData] = _
+
+  @Setup
+  def setup(): Unit = {
+    val rand = new Random(count)
+    val types = Seq(ConversationType.OneToOne, ConversationType.Group, ConversationType.Group, ConversationType.Incoming, ConversationType.WaitForConnection, ConversationType.Self)
+    conversations = (0 until count).map { i =>
+      ConversationData(ConvId(), RConvId(), Some(s"conv $i"), UserId(), types(rand.nextInt(types.size)),
+        lastEventTime = Instant.ofEpochMilli(rand.nextInt(Int.MaxValue).toLong),
+        archived = rand.nextInt(10) == 0,
+        hidden = rand.nextInt(20) == 0)
+    }.toSet
+  }
+
+  @Benchmark
+  def regular(): Seq[ConversationData] = conversations.filter(RegularListFilter).toSeq.sorted(ConversationData.ConversationDataOrdering)
+
+  @Benchmark
+  def archived(): Seq[ConversationData] = conversations.filter(ArchivedListFilter).toSeq.sorted(ConversationData.ConversationDataOrdering)
+
+  @Benchmark
+  def incoming(): Seq[ConversationData] = conversations.filter(IncomingListFilter).toSeq
+
+  @Benchmark
+  def established(): Int = conversations.count(EstablishedListFilter)
+}
@@ -0,0 +1,61 @@
+/**
+ * Wire
+ * Copyright (C) 2018 Wire Swiss GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.waz.zclient.benchmarks
+
+import java.util.concurrent.TimeUnit
+
+import com.waz.zclient.collection.controllers.CollectionUtils
+import org.openjdk.jmh.annotations._
+
+import scala.util.Random
+
+/**
+  * Search results highlighting, executed for every bound row in collection and search results.
+  * Input is already normalized, transliteration is done by sync engine and is not measured here.
+  * SpannableString comes from mockable android.jar, so only match finding and allocations are measured.
+  */
+@State(Scope.Benchmark)
+@BenchmarkMode(Array(Mode.AverageTime))
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+class HighlightBenchmark {
+
+  @Param(Array("80", "2000"))
+  var length: Int = _
+
+  @Param(Array("1", "3"))
+  var queryCount: Int = _
+
+  var message: String = _
+  var queries: Set[String] = _
+
+  @Setup
+  def setup(): Unit = {
+    val rand = new Random(length)
+    val words = Seq("meeting", "tomorrow", "wire", "lunch", "call", "project", "release", "beta", "review", "coffee")
+    val b = new StringBuilder
+    while (b.length < length) b.append(words(rand.nextInt(words.size))).append(' ')
+    message = b.toString.trim
+    queries = words.take(queryCount).toSet
+  }
+
+  @Benchmark
+  def highlight(): Int = CollectionUtils.getHighlightedSpannableString(message, message, queries, 0xff00ff00)._2
+
+  @Benchmark
+  def highlightWithEllipsis(): Int = CollectionUtils.getHighlightedSpannableString(message, message, queries, 0xff00ff00, beginThreshold = 20)._2
+}
@@ -0,0 +1,70 @@
+/**
+ * Wire
+ * Copyright (C) 2018 Wire Swiss GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.waz.zclient.benchmarks
+
+import java.util.concurrent.TimeUnit
+
+import com.waz.api.Message
+import com.waz.content.MessagesCursor.Entry
+import com.waz.model.{ConvId, MessageData, MessageId, UserId}
+import com.waz.zclient.messages.IndexWindow
+import org.openjdk.jmh.annotations._
+import org.threeten.bp.Instant
+
+import scala.util.Random
+
+/**
+  * Diffing of message list window on cursor change, this runs on ui thread for every update of visible conversation.
+  */
+@State(Scope.Benchmark)
+@BenchmarkMode(Array(Mode.AverageTime))
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+class IndexWindowDiffBenchmark {
+
+  @Param(Array("100", "300"))
+  var size: Int = _
+
+  // append: new messages received, edit: single message moved to the end, mixed: random inserts, removals and moves
+  @Param(Array("append", "edit", "mixed"))
+  var change: String = _
+
+  var from: Array[Entry] = _
+  var to: Array[Entry] = _
+
+  @Setup
+  def setup(): Unit = {
+    val rand = new Random(size)
+    val ids = (0 until size).map(i => s"m$i")
+    val updated = change match {
+      case "append" => ids.drop(5) ++ (0 until 5).map(i => s"new$i")
+      case "edit"   => ids.patch(size / 2, Nil, 1) :+ ids(size / 2)
+      case _ =>
+        val kept = rand.shuffle(ids.filter(_ => rand.nextInt(10) != 0).zipWithIndex).sortBy { case (_, i) => i + rand.nextInt(8) }.map(_._1)
+        kept.flatMap(id => if (rand.nextInt(10) == 0) Seq(s"new-$id", id) else Seq(id))
+    }
+    from = entries(ids)
+    to = entries(updated)
+  }
+
+  @Benchmark
+  def diff(): IndexWindow.Changes = IndexWindow.diff(from, to)
+
+  private def entries(ids: Seq[String]) = ids.zipWithIndex.map { case (id, i) =>
+    Entry(MessageData(MessageId(id), ConvId("conv"), Message.Type.TEXT, UserId("user"), time = Instant.ofEpochMilli(i)))
+  }.toArray
+}
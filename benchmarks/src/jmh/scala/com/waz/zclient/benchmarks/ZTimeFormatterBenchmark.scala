@@ -0,0 +1,87 @@
+/**
+ * Wire
+ * Copyright (C) 2018 Wire Swiss GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.waz.zclient.benchmarks
+
+import java.util.concurrent.TimeUnit
+
+import android.content.{Context, ContextWrapper}
+import android.content.res.Resources
+import com.waz.zclient.R
+import com.waz.zclient.utils.ZTimeFormatter
+import org.openjdk.jmh.annotations._
+import org.threeten.bp.format.DateTimeFormatter
+import org.threeten.bp.{LocalDateTime, ZoneId}
+
+/**
+  * Separator and footer timestamps, formatted for most of bound message views.
+  */
+@State(Scope.Benchmark)
+@BenchmarkMode(Array(Mode.AverageTime))
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+class ZTimeFormatterBenchmark {
+  import ZTimeFormatterBenchmark._
+
+  @Param(Array("justNow", "minutes", "today", "thisYear", "lastYear"))
+  var age: String = _
+
+  val context: Context = new ContextWrapper(null) {
+    override def getResources: Resources = EnglishResources
+  }
+  val zone = ZoneId.of("Europe/Berlin")
+  val now = LocalDateTime.of(2018, 6, 15, 14, 30)
+  var then: LocalDateTime = _
+
+  @Setup
+  def setup(): Unit = then = age match {
+    case "justNow"  => now.minusSeconds(30)
+    case "minutes"  => now.minusMinutes(20)
+    case "today"    => now.minusHours(3)
+    case "thisYear" => now.minusMonths(2)
+    case _          => now.minusYears(2)
+  }
+
+  @Benchmark
+  def separatorTime(): String = ZTimeFormatter.getSeparatorTime(context, now, then, true, zone, false)
+
+  @Benchmark
+  def separatorTime12h(): String = ZTimeFormatter.getSeparatorTime(context, now, then, false, zone, false, false)
+
+  // baseline: pattern parsing alone, which is repeated by every formatter call
+  @Benchmark
+  def parsePattern(): DateTimeFormatter = DateTimeFormatter.ofPattern("EEE, MMM d, YYYY, HH:mm")
+}
+
+object ZTimeFormatterBenchmark {
+
+  // values from res/values/strings.xml, framework Resources are not available on plain JVM
+  val Strings = Map(
+    R.string.timestamp__just_now                                          -> "Just now",
+    R.string.timestamp_pattern__24h_format                                -> "HH:mm",
+    R.string.timestamp_pattern__12h_format                                -> "hh:mm a",
+    R.string.timestamp_pattern__date_and_time__no_year                    -> "EEE, MMM d, %1$s",
+    R.string.timestamp_pattern__date_and_time__with_year                  -> "EEE, MMM d, YYYY, %1$s",
+    R.string.timestamp_pattern__date_and_time__no_year_no_weekday         -> "MMM d, %1$s",
+    R.string.timestamp_pattern__date_and_time__with_year_no_weekday       -> "MMM d, YYYY, %1$s"
+  )
+
+  object EnglishResources extends Resources(null, null, null) {
+    override def getString(id: Int): String = Strings(id)
+    override def getString(id: Int, formatArgs: AnyRef*): String = String.format(Strings(id), formatArgs: _*)
+    override def getQuantityString(id: Int, quantity: Int, formatArgs: AnyRef*): String = String.format("%1$d minutes ago", formatArgs: _*)
+  }
+}